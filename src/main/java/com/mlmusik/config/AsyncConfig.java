@@ -0,0 +1,47 @@
+package com.mlmusik.config;
+
+import com.mlmusik.service.StreamScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Executor for async MVC responses (StreamingResponseBody). Bodies of shaped downloads, marked by
+ * FileStreamingService, run on the stream scheduler's own pool; everything else runs on Boot's
+ * application task executor (virtual threads when enabled).
+ */
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private AsyncTaskExecutor applicationTaskExecutor;
+
+    @Autowired
+    private StreamScheduler streamScheduler;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new AsyncTaskExecutor() {
+            @Override
+            public void execute(Runnable task) {
+                // Submitted on the request thread, so the request's attributes are still bound
+                if (!isShapedRequest() || !streamScheduler.executeShaped(task)) {
+                    applicationTaskExecutor.execute(task);
+                }
+            }
+        });
+    }
+
+    private static boolean isShapedRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null
+                && attributes.getAttribute(StreamScheduler.SHAPED_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) != null;
+    }
+}
@@ -1,13 +1,23 @@
 package com.mlmusik.controller;
 
 import com.mlmusik.model.Album;
+import com.mlmusik.model.AlbumImport;
+import com.mlmusik.model.AlbumListing;
+import com.mlmusik.model.IngestJob;
+import com.mlmusik.repository.AlbumRepository;
 import com.mlmusik.service.AlbumService;
+import com.mlmusik.service.IngestJobService;
+import com.mlmusik.service.Keyset;
+import com.mlmusik.service.ListenerService;
+import com.mlmusik.service.TrendingService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,8 +29,23 @@ public class AlbumController {
     @Autowired
     private AlbumService albumService;
 
+    @Autowired
+    private IngestJobService ingestJobService;
+
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private ListenerService listenerService;
+
+    /**
+     * Accepts an album upload; tracks are tagged and stored in the background. Poll the
+     * returned job (GET /jobs/{id}) for progress and the new album id. A retry with the same
+     * Idempotency-Key header returns the original job.
+     */
     @PostMapping("/upload")
     public ResponseEntity<Map<String, Object>> uploadAlbum(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @RequestParam("title") String title,
             @RequestParam("artist") String artist,
             @RequestParam("coverArt") MultipartFile coverArt,
@@ -49,15 +74,11 @@ public class AlbumController {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
             }
 
-            Album album = albumService.createAlbumWithSongs(
-                    title, artist, coverArt, 
-                    songTitles, songArtists, songFeaturedArtists, 
+            IngestJob job = ingestJobService.submitAlbum(idempotencyKey,
+                    title, artist, coverArt,
+                    songTitles, songArtists, songFeaturedArtists,
                     songProducers, songTrackNumbers, mp3Files);
-            
-            response.put("success", true);
-            response.put("message", "Album with songs uploaded successfully");
-            response.put("album", album);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            return JobController.accepted(job, "Album accepted for processing");
         } catch (Exception e) {
             response.put("success", false);
             response.put("message", "Failed to upload album: " + e.getMessage());
@@ -65,9 +86,91 @@ public class AlbumController {
         }
     }
 
+    /**
+     * Bulk import of albums whose files were copied to the server's import directory, e.g.
+     * [{"title": "...", "artist": "...", "coverArt": "album1/cover.jpg",
+     *   "tracks": [{"title": "...", "producer": "...", "trackNumber": 1, "file": "album1/01.mp3"}]}]
+     * Each album is stored in its own transaction; the response lists the outcome per album.
+     */
+    @PostMapping("/import")
+    public ResponseEntity<Map<String, Object>> importAlbums(@RequestBody List<AlbumImport> albums) {
+        Map<String, Object> response = new HashMap<>();
+        List<Map<String, Object>> results = albumService.importAlbums(albums);
+        long imported = results.stream().filter(result -> Boolean.TRUE.equals(result.get("success"))).count();
+        response.put("success", imported == results.size());
+        response.put("message", "Imported " + imported + " of " + results.size() + " albums");
+        response.put("albums", results);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Lists albums as keyset pages of album summaries (no song lists): one page (newest first and
+     * Keyset.DEFAULT_LIMIT albums unless given) plus the cursor of the next one.
+     * Example: /api/albums?limit=50&sort=likes&order=desc&artist=Name&cursor=...
+     * (sort: createdAt, views, likes or downloads; order: asc or desc)
+     */
     @GetMapping
-    public ResponseEntity<List<Album>> getAllAlbums() {
-        return ResponseEntity.ok(albumService.getAllAlbums());
+    public ResponseEntity<?> getAllAlbums(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "order", required = false) String order,
+            @RequestParam(value = "artist", required = false) String artist) {
+        Map<String, Object> response = new HashMap<>();
+        Keyset.SortKey sortKey = Keyset.SortKey.fromParam(sort != null ? sort : "createdAt");
+        Sort.Direction direction = Sort.Direction.fromOptionalString(order != null ? order : "desc").orElse(null);
+        if (sortKey == null || direction == null) {
+            response.put("success", false);
+            response.put("message", "Unsupported sort, use createdAt, views, likes or downloads with order asc or desc");
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            Keyset.Page<AlbumRepository.AlbumSummary> page = albumService.getAlbumsPage(sortKey, direction, cursor,
+                    Keyset.clampLimit(limit), artist);
+            response.put("success", true);
+            response.put("albums", page.getItems());
+            response.put("nextCursor", page.getNextCursor());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * Most played albums in a time window
+     * Example: /api/albums/trending?window=24h&limit=50 (window: 1h, 24h or 7d)
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<Map<String, Object>> getTrendingAlbums(
+            @RequestParam(value = "window", defaultValue = "24h") String window,
+            @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        TrendingService.Window trendingWindow = TrendingService.Window.fromLabel(window);
+        if (trendingWindow == null) {
+            response.put("success", false);
+            response.put("message", "Unsupported window, use 1h, 24h or 7d");
+            return ResponseEntity.badRequest().body(response);
+        }
+        List<TrendingService.Entry> ranking = trendingService.getTopAlbums(trendingWindow, limit);
+        List<Long> ids = new ArrayList<>(ranking.size());
+        Map<Long, Long> plays = new HashMap<>();
+        for (TrendingService.Entry entry : ranking) {
+            ids.add(entry.getId());
+            plays.put(entry.getId(), entry.getPlays());
+        }
+        List<Map<String, Object>> albums = new ArrayList<>();
+        for (AlbumListing album : albumService.getAlbumsByIds(ids)) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("album", album);
+            item.put("plays", plays.get(album.getId()));
+            albums.add(item);
+        }
+        response.put("success", true);
+        response.put("window", trendingWindow.getLabel());
+        response.put("albums", albums);
+        return ResponseEntity.ok(response);
     }
 
     @GetMapping("/{id}")
@@ -77,6 +180,28 @@ public class AlbumController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Approximate number of distinct listeners across an album's songs
+     * Example: /api/albums/1/listeners?window=7d (window: 1d, 7d or all)
+     */
+    @GetMapping("/{id}/listeners")
+    public ResponseEntity<Map<String, Object>> getAlbumListeners(
+            @PathVariable Long id,
+            @RequestParam(value = "window", defaultValue = "all") String window) {
+        Map<String, Object> response = new HashMap<>();
+        ListenerService.Window listenerWindow = ListenerService.Window.fromLabel(window);
+        if (listenerWindow == null) {
+            response.put("success", false);
+            response.put("message", "Unsupported window, use 1d, 7d or all");
+            return ResponseEntity.badRequest().body(response);
+        }
+        response.put("success", true);
+        response.put("albumId", id);
+        response.put("window", listenerWindow.getLabel());
+        response.put("uniqueListeners", listenerService.getAlbumListeners(id, listenerWindow));
+        return ResponseEntity.ok(response);
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<Album> updateAlbum(@PathVariable Long id, @RequestBody Map<String, String> albumData) {
         Album album = albumService.updateAlbum(id, albumData.get("title"), albumData.get("artist"));
@@ -0,0 +1,57 @@
+package com.mlmusik.controller;
+
+import com.mlmusik.model.IngestJob;
+import com.mlmusik.service.IngestJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/jobs")
+public class JobController {
+
+    @Autowired
+    private IngestJobService ingestJobService;
+
+    /**
+     * Status of an upload: QUEUED, RUNNING (with completedTracks of totalTracks), SUCCEEDED
+     * (resultId is the new song or album) or FAILED (with the error message)
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        Optional<IngestJob> job = ingestJobService.getJob(id);
+        if (job.isEmpty()) {
+            response.put("success", false);
+            response.put("message", "Job not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        response.put("success", true);
+        response.put("job", job.get());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 202 response of an accepted upload, pointing at the job to poll
+     */
+    static ResponseEntity<Map<String, Object>> accepted(IngestJob job, String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", message);
+        response.put("jobId", job.getId());
+        response.put("job", job);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/jobs/{id}").buildAndExpand(job.getId()).toUri())
+                .body(response);
+    }
+}
@@ -0,0 +1,77 @@
+package com.mlmusik.controller;
+
+import com.mlmusik.service.CatalogSearchService;
+import com.mlmusik.service.Keyset;
+import com.mlmusik.service.SuggestIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/search")
+public class SearchController {
+
+    @Autowired
+    private SuggestIndex suggestIndex;
+
+    @Autowired
+    private CatalogSearchService catalogSearchService;
+
+    /**
+     * Ranked, typo-tolerant search over songs or albums, one keyset page at a time
+     * Example: /api/search?q=halo%20beyonce&type=songs&limit=20&cursor=...
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> search(
+            @RequestParam("q") String query,
+            @RequestParam(value = "type", defaultValue = "songs") String type,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        Map<String, Object> response = new HashMap<>();
+        CatalogSearchService.Type searchType = CatalogSearchService.Type.fromParam(type);
+        if (searchType == null || query.isBlank()) {
+            response.put("success", false);
+            response.put("message", searchType == null ? "Unsupported type, use songs or albums" : "Query must not be empty");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (!catalogSearchService.isReady()) {
+            response.put("success", false);
+            response.put("message", "Search is not available");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        try {
+            Keyset.Page<CatalogSearchService.Hit> page = catalogSearchService.search(searchType, query, cursor,
+                    Keyset.clampLimit(limit));
+            response.put("success", true);
+            response.put("query", query);
+            response.put("type", searchType.name().toLowerCase());
+            response.put("results", page.getItems());
+            response.put("nextCursor", page.getNextCursor());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * Search-as-you-type suggestions over song titles, artists, producers and album titles,
+     * most popular first
+     * Example: /api/search/suggest?q=bey&limit=10
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<Map<String, Object>> suggest(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("query", query);
+        response.put("suggestions", suggestIndex.suggest(query, Math.min(limit, SuggestIndex.MAX_SUGGESTIONS)));
+        return ResponseEntity.ok(response);
+    }
+}
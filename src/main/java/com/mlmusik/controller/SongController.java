@@ -1,22 +1,33 @@
 package com.mlmusik.controller;
 
+import com.mlmusik.model.IngestJob;
 import com.mlmusik.model.Song;
+import com.mlmusik.model.SongListing;
+import com.mlmusik.repository.SongRepository;
+import com.mlmusik.service.FilePathIndex;
+import com.mlmusik.service.FileStreamingService;
+import com.mlmusik.service.IngestJobService;
+import com.mlmusik.service.Keyset;
+import com.mlmusik.service.ListenerService;
 import com.mlmusik.service.SongService;
+import com.mlmusik.service.StoredFile;
+import com.mlmusik.service.TrendingService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/songs")
@@ -25,37 +36,122 @@ public class SongController {
     @Autowired
     private SongService songService;
 
+    @Autowired
+    private IngestJobService ingestJobService;
+
+    @Autowired
+    private FileStreamingService fileStreamingService;
+
+    @Autowired
+    private FilePathIndex filePathIndex;
+
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private ListenerService listenerService;
+
     @Value("${app.base-url}")
     private String baseUrl;
 
     @Value("${app.frontend-url}")
     private String frontendUrl;
 
+    /**
+     * Accepts a single track upload; tagging and storage run in the background. Poll the
+     * returned job (GET /jobs/{id}) for the result. A retry with the same Idempotency-Key
+     * header returns the original job.
+     */
     @PostMapping("/upload")
     public ResponseEntity<Map<String, Object>> uploadSingleTrack(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @RequestParam("title") String title,
             @RequestParam("artist") String artist,
             @RequestParam(value = "featuredArtists", required = false) String featuredArtists,
             @RequestParam("producer") String producer,
             @RequestParam("coverArt") MultipartFile coverArt,
             @RequestParam("mp3File") MultipartFile mp3File) {
-        Map<String, Object> response = new HashMap<>();
         try {
-            Song song = songService.createSingleTrack(title, artist, featuredArtists, producer, coverArt, mp3File);
-            response.put("success", true);
-            response.put("message", "Single track uploaded successfully");
-            response.put("song", song);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            IngestJob job = ingestJobService.submitSong(idempotencyKey, title, artist, featuredArtists, producer,
+                    coverArt, mp3File);
+            return JobController.accepted(job, "Single track accepted for processing");
         } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("message", "Failed to upload track: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
         }
     }
 
+    /**
+     * Lists songs as keyset pages: one page (newest first and Keyset.DEFAULT_LIMIT songs unless
+     * given) plus the cursor of the next one.
+     * Example: /api/songs?limit=50&sort=views&order=desc&artist=Name&cursor=...
+     * (sort: createdAt, views, likes or downloads; order: asc or desc)
+     */
     @GetMapping
-    public ResponseEntity<List<Song>> getAllSongs() {
-        return ResponseEntity.ok(songService.getAllSongs());
+    public ResponseEntity<?> getAllSongs(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "order", required = false) String order,
+            @RequestParam(value = "artist", required = false) String artist,
+            @RequestParam(value = "producer", required = false) String producer) {
+        Map<String, Object> response = new HashMap<>();
+        Keyset.SortKey sortKey = Keyset.SortKey.fromParam(sort != null ? sort : "createdAt");
+        Sort.Direction direction = Sort.Direction.fromOptionalString(order != null ? order : "desc").orElse(null);
+        if (sortKey == null || direction == null) {
+            response.put("success", false);
+            response.put("message", "Unsupported sort, use createdAt, views, likes or downloads with order asc or desc");
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            Keyset.Page<SongListing> page = songService.getSongsPage(sortKey, direction, cursor,
+                    Keyset.clampLimit(limit), artist, producer);
+            response.put("success", true);
+            response.put("songs", page.getItems());
+            response.put("nextCursor", page.getNextCursor());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * Most played songs in a time window
+     * Example: /api/songs/trending?window=24h&limit=50 (window: 1h, 24h or 7d)
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<Map<String, Object>> getTrendingSongs(
+            @RequestParam(value = "window", defaultValue = "24h") String window,
+            @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        TrendingService.Window trendingWindow = TrendingService.Window.fromLabel(window);
+        if (trendingWindow == null) {
+            response.put("success", false);
+            response.put("message", "Unsupported window, use 1h, 24h or 7d");
+            return ResponseEntity.badRequest().body(response);
+        }
+        List<TrendingService.Entry> ranking = trendingService.getTopSongs(trendingWindow, limit);
+        List<Long> ids = new ArrayList<>(ranking.size());
+        Map<Long, Long> plays = new HashMap<>();
+        for (TrendingService.Entry entry : ranking) {
+            ids.add(entry.getId());
+            plays.put(entry.getId(), entry.getPlays());
+        }
+        List<Map<String, Object>> songs = new ArrayList<>();
+        for (SongListing song : songService.getSongsByIds(ids)) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("song", song);
+            item.put("plays", plays.get(song.getId()));
+            songs.add(item);
+        }
+        response.put("success", true);
+        response.put("window", trendingWindow.getLabel());
+        response.put("songs", songs);
+        return ResponseEntity.ok(response);
     }
 
     @GetMapping("/{id}")
@@ -92,9 +188,9 @@ public class SongController {
     }
 
     @PostMapping("/{id}/play")
-    public ResponseEntity<Map<String, Object>> playSong(@PathVariable Long id) {
+    public ResponseEntity<Map<String, Object>> playSong(@PathVariable Long id, HttpServletRequest request) {
         Map<String, Object> response = new HashMap<>();
-        Song song = songService.incrementViews(id);
+        Song song = songService.incrementViews(id, listenerFingerprint(request));
         if (song != null) {
             response.put("success", true);
             response.put("song", song);
@@ -105,6 +201,28 @@ public class SongController {
         return ResponseEntity.notFound().build();
     }
 
+    /**
+     * Approximate number of distinct listeners of a song
+     * Example: /api/songs/1/listeners?window=7d (window: 1d, 7d or all)
+     */
+    @GetMapping("/{id}/listeners")
+    public ResponseEntity<Map<String, Object>> getSongListeners(
+            @PathVariable Long id,
+            @RequestParam(value = "window", defaultValue = "all") String window) {
+        Map<String, Object> response = new HashMap<>();
+        ListenerService.Window listenerWindow = ListenerService.Window.fromLabel(window);
+        if (listenerWindow == null) {
+            response.put("success", false);
+            response.put("message", "Unsupported window, use 1d, 7d or all");
+            return ResponseEntity.badRequest().body(response);
+        }
+        response.put("success", true);
+        response.put("songId", id);
+        response.put("window", listenerWindow.getLabel());
+        response.put("uniqueListeners", listenerService.getSongListeners(id, listenerWindow));
+        return ResponseEntity.ok(response);
+    }
+
     @PostMapping("/{id}/like")
     public ResponseEntity<Map<String, Object>> likeSong(@PathVariable Long id) {
         Map<String, Object> response = new HashMap<>();
@@ -199,47 +317,72 @@ public class SongController {
     }
 
     @GetMapping("/{id}/download")
-    public ResponseEntity<Resource> downloadSong(@PathVariable Long id) {
-        File songFile = songService.getSongFile(id);
-        if (songFile != null && songFile.exists()) {
-            songService.incrementDownloads(id);
-            
-            // Get song to use its title and artist as filename
-            String filename = songFile.getName(); // Default to stored filename
-            java.util.Optional<Song> songOpt = songService.getSongById(id);
-            if (songOpt.isPresent()) {
-                Song song = songOpt.get();
-                // Create filename in format: "Artist - Title.mp3"
-                String artist = song.getArtist() != null ? sanitizeFilename(song.getArtist()) : "";
-                String title = song.getTitle() != null ? sanitizeFilename(song.getTitle()) : "song";
-                
-                // Build filename
-                if (!artist.isEmpty()) {
-                    filename = artist + " - " + title;
-                } else {
-                    filename = title;
-                }
-                
-                // Add extension
-                String extension = "";
-                int lastDot = songFile.getName().lastIndexOf('.');
-                if (lastDot > 0) {
-                    extension = songFile.getName().substring(lastDot);
-                } else {
-                    extension = ".mp3";
-                }
-                filename = filename + extension;
-            }
-            
-            Resource resource = new FileSystemResource(songFile);
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType("audio/mpeg"))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .body(resource);
+    public ResponseEntity<StreamingResponseBody> downloadSong(@PathVariable Long id, HttpServletRequest request) {
+        // One metadata query; the file itself comes from the path index
+        Optional<SongRepository.DownloadView> songOpt = songService.getDownloadView(id);
+        if (songOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.notFound().build();
+        SongRepository.DownloadView song = songOpt.get();
+        StoredFile songFile = filePathIndex.getSongById(id);
+        if (songFile == null) {
+            songFile = filePathIndex.register(id, song.getFilePath(), song.getFileEtag());
+        }
+        if (songFile == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        // Create filename in format: "Artist - Title.mp3"
+        String artist = song.getArtist() != null ? sanitizeFilename(song.getArtist()) : "";
+        String title = song.getTitle() != null ? sanitizeFilename(song.getTitle()) : "song";
+        String filename = artist.isEmpty() ? title : artist + " - " + title;
+
+        // Add extension
+        int lastDot = songFile.getName().lastIndexOf('.');
+        filename = filename + (lastDot > 0 ? songFile.getName().substring(lastDot) : ".mp3");
+
+        // Served in the download class, so it is the one paced when shaping is enabled
+        ResponseEntity<StreamingResponseBody> response = fileStreamingService.download(songFile, filename, request);
+        if (!"HEAD".equals(request.getMethod()) && isDownloadStart(response)) {
+            // Counted asynchronously so the first byte does not wait for the database
+            songService.recordDownload(id);
+        }
+        return response;
+    }
+
+    /**
+     * Whether a download response starts the file: a full 200, or a single range from byte 0.
+     * Revalidations (304), later range chunks and failed ranges are not new downloads.
+     */
+    private static boolean isDownloadStart(ResponseEntity<?> response) {
+        if (response.getStatusCode() == HttpStatus.OK) {
+            return true;
+        }
+        if (response.getStatusCode() != HttpStatus.PARTIAL_CONTENT) {
+            return false;
+        }
+        String contentRange = response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE);
+        return contentRange != null && contentRange.startsWith("bytes 0-");
     }
     
+    /**
+     * Identifies a listener: the X-Client-Id header if the client sends one, otherwise the
+     * client address (first X-Forwarded-For hop when behind a proxy) and user agent
+     */
+    private String listenerFingerprint(HttpServletRequest request) {
+        String clientId = request.getHeader("X-Client-Id");
+        if (clientId != null && !clientId.isBlank()) {
+            return "id:" + clientId.trim();
+        }
+        String address = request.getRemoteAddr();
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if (forwardedFor != null && !forwardedFor.isBlank()) {
+            address = forwardedFor.split(",")[0].trim();
+        }
+        String userAgent = request.getHeader(HttpHeaders.USER_AGENT);
+        return "ip:" + address + "|" + (userAgent != null ? userAgent : "");
+    }
+
     /**
      * Sanitizes a filename by removing or replacing invalid characters
      */
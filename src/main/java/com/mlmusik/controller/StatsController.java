@@ -0,0 +1,99 @@
+package com.mlmusik.controller;
+
+import com.mlmusik.service.CatalogCache;
+import com.mlmusik.service.CounterService;
+import com.mlmusik.service.EventJournal;
+import com.mlmusik.service.HotSegmentCache;
+import com.mlmusik.service.SongCounter;
+import com.mlmusik.service.StreamScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    @Autowired
+    private HotSegmentCache hotSegmentCache;
+
+    @Autowired
+    private StreamScheduler streamScheduler;
+
+    @Autowired
+    private CounterService counterService;
+
+    @Autowired
+    private EventJournal eventJournal;
+
+    @Autowired
+    private CatalogCache catalogCache;
+
+    /**
+     * Hit/miss/eviction counters of the off-heap song head cache
+     */
+    @GetMapping("/stream-cache")
+    public ResponseEntity<Map<String, Object>> getStreamCacheStats() {
+        return ResponseEntity.ok(hotSegmentCache.getStats());
+    }
+
+    /**
+     * Active streams and bytes sent per priority class
+     */
+    @GetMapping("/streams")
+    public ResponseEntity<Map<String, Object>> getStreamStats() {
+        return ResponseEntity.ok(streamScheduler.getStats());
+    }
+
+    /**
+     * Size, hit ratio and evictions of the song, album and share token caches
+     */
+    @GetMapping("/catalog-cache")
+    public ResponseEntity<Map<String, Object>> getCatalogCacheStats() {
+        return ResponseEntity.ok(catalogCache.getStats());
+    }
+
+    /**
+     * Buffered counter events and batch flush statistics
+     */
+    @GetMapping("/counters")
+    public ResponseEntity<Map<String, Object>> getCounterStats() {
+        return ResponseEntity.ok(counterService.getStats());
+    }
+
+    /**
+     * Event journal throughput, group commits and segment count
+     */
+    @GetMapping("/journal")
+    public ResponseEntity<Map<String, Object>> getJournalStats() {
+        return ResponseEntity.ok(eventJournal.getStats());
+    }
+
+    /**
+     * Journal counter totals of one song, from the fold the journal maintains as it writes
+     */
+    @GetMapping("/journal/songs/{songId}")
+    public ResponseEntity<Map<String, Object>> getJournalSongCounters(@PathVariable Long songId) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (!eventJournal.isEnabled()) {
+            response.put("success", false);
+            response.put("message", "Event journal is disabled");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        long[] totals = eventJournal.getSongTotals(songId);
+        response.put("success", true);
+        response.put("songId", songId);
+        for (SongCounter counter : SongCounter.values()) {
+            response.put(counter.name().toLowerCase(), totals != null ? totals[counter.ordinal()] : 0);
+        }
+        response.put("lastEventAt", totals != null ? totals[totals.length - 1] : 0);
+        return ResponseEntity.ok(response);
+    }
+}
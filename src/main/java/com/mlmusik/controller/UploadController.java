@@ -0,0 +1,131 @@
+package com.mlmusik.controller;
+
+import com.mlmusik.model.IngestJob;
+import com.mlmusik.model.UploadRequest;
+import com.mlmusik.model.UploadSession;
+import com.mlmusik.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Resumable uploads, for files larger than a multipart request allows or connections that drop:
+ * 1. POST /uploads with the metadata and the name and size of every file, e.g.
+ *    {"type": "album", "title": "...", "artist": "...", "coverArtFilename": "cover.jpg", "coverArtSize": 81234,
+ *     "tracks": [{"title": "...", "producer": "...", "trackNumber": 1, "filename": "01.mp3", "size": 9876543}]}
+ *    File 0 is the cover art, files 1..n are the tracks in order.
+ * 2. PUT /uploads/{id}/files/{index}?offset=N with raw bytes, as many chunks as needed; a chunk
+ *    must start at the file's received offset.
+ * 3. After an interruption, GET /uploads/{id} for the received offset of every file and resume.
+ * 4. POST /uploads/{id}/finalize queues the ingest job (poll GET /jobs/{id}).
+ */
+@RestController
+@RequestMapping("/uploads")
+public class UploadController {
+
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> createUpload(@RequestBody UploadRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            UploadSession session = uploadSessionService.create(request);
+            response.put("success", true);
+            response.put("message", "Upload created");
+            response.put("upload", session);
+            return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentRequest()
+                            .path("/{id}").buildAndExpand(session.getId()).toUri())
+                    .body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        } catch (IOException e) {
+            response.put("success", false);
+            response.put("message", "Failed to create upload: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * The upload with the received offset of each file
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> getUpload(@PathVariable String id) {
+        Map<String, Object> response = new HashMap<>();
+        Optional<UploadSession> session = uploadSessionService.getSession(id);
+        if (session.isEmpty()) {
+            response.put("success", false);
+            response.put("message", "Upload not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        response.put("success", true);
+        response.put("upload", session.get());
+        return ResponseEntity.ok(response);
+    }
+
+    @PutMapping("/{id}/files/{index}")
+    public ResponseEntity<Map<String, Object>> uploadChunk(@PathVariable String id, @PathVariable int index,
+                                                           @RequestParam("offset") long offset,
+                                                           HttpServletRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            long received = uploadSessionService.writeChunk(id, index, offset, request.getInputStream());
+            response.put("success", true);
+            response.put("received", received);
+            return ResponseEntity.ok(response);
+        } catch (UploadSessionService.OffsetMismatchException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("received", e.getReceived());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (NoSuchElementException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        } catch (IOException e) {
+            response.put("success", false);
+            response.put("message", "Failed to write chunk: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @PostMapping("/{id}/finalize")
+    public ResponseEntity<Map<String, Object>> finalizeUpload(@PathVariable String id) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            IngestJob job = uploadSessionService.finalizeUpload(id);
+            return JobController.accepted(job, "Upload complete, accepted for processing");
+        } catch (NoSuchElementException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (IOException e) {
+            response.put("success", false);
+            response.put("message", "Failed to finalize upload: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+}
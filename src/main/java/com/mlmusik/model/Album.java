@@ -8,11 +8,22 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "albums")
+// Each listing sort, alone and under the artist filter, is paired with id so keyset pages are a single index range scan
+@Table(name = "albums", indexes = {
+        @Index(name = "idx_albums_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_albums_total_views_id", columnList = "total_views, id"),
+        @Index(name = "idx_albums_total_likes_id", columnList = "total_likes, id"),
+        @Index(name = "idx_albums_total_downloads_id", columnList = "total_downloads, id"),
+        @Index(name = "idx_albums_artist_created_at_id", columnList = "artist, created_at, id"),
+        @Index(name = "idx_albums_artist_total_views_id", columnList = "artist, total_views, id"),
+        @Index(name = "idx_albums_artist_total_likes_id", columnList = "artist, total_likes, id"),
+        @Index(name = "idx_albums_artist_total_downloads_id", columnList = "artist, total_downloads, id")
+})
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Album {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "albums_seq")
+    @SequenceGenerator(name = "albums_seq", sequenceName = "albums_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -24,12 +35,25 @@ public class Album {
     @Column(name = "cover_art_path")
     private String coverArtPath;
 
-    @Column(name = "total_views")
+    @Column(name = "cover_art_etag")
+    private String coverArtEtag;
+
+    // Roll-ups of the songs' counters, only written by CounterService
+    @Column(name = "total_views", updatable = false)
     private Long totalViews = 0L;
 
-    @Column(name = "total_downloads")
+    @Column(name = "total_downloads", updatable = false)
     private Long totalDownloads = 0L;
 
+    @Column(name = "total_likes", updatable = false)
+    private Long totalLikes = 0L;
+
+    @Column(name = "total_dislikes", updatable = false)
+    private Long totalDislikes = 0L;
+
+    @Column(name = "total_shares", updatable = false)
+    private Long totalShares = 0L;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -84,6 +108,14 @@ public class Album {
         this.coverArtPath = coverArtPath;
     }
 
+    public String getCoverArtEtag() {
+        return coverArtEtag;
+    }
+
+    public void setCoverArtEtag(String coverArtEtag) {
+        this.coverArtEtag = coverArtEtag;
+    }
+
     public Long getTotalViews() {
         return totalViews;
     }
@@ -100,6 +132,30 @@ public class Album {
         this.totalDownloads = totalDownloads;
     }
 
+    public Long getTotalLikes() {
+        return totalLikes;
+    }
+
+    public void setTotalLikes(Long totalLikes) {
+        this.totalLikes = totalLikes;
+    }
+
+    public Long getTotalDislikes() {
+        return totalDislikes;
+    }
+
+    public void setTotalDislikes(Long totalDislikes) {
+        this.totalDislikes = totalDislikes;
+    }
+
+    public Long getTotalShares() {
+        return totalShares;
+    }
+
+    public void setTotalShares(Long totalShares) {
+        this.totalShares = totalShares;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,103 @@
+package com.mlmusik.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One album of a bulk import manifest. File paths are relative to the server's import directory.
+ */
+public class AlbumImport {
+    private String title;
+    private String artist;
+    private String coverArt;
+    private List<Track> tracks = new ArrayList<>();
+
+    public static class Track {
+        private String title;
+        private String artist;
+        private String featuredArtists;
+        private String producer;
+        private Integer trackNumber;
+        private String file;
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public String getArtist() {
+            return artist;
+        }
+
+        public void setArtist(String artist) {
+            this.artist = artist;
+        }
+
+        public String getFeaturedArtists() {
+            return featuredArtists;
+        }
+
+        public void setFeaturedArtists(String featuredArtists) {
+            this.featuredArtists = featuredArtists;
+        }
+
+        public String getProducer() {
+            return producer;
+        }
+
+        public void setProducer(String producer) {
+            this.producer = producer;
+        }
+
+        public Integer getTrackNumber() {
+            return trackNumber;
+        }
+
+        public void setTrackNumber(Integer trackNumber) {
+            this.trackNumber = trackNumber;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public void setArtist(String artist) {
+        this.artist = artist;
+    }
+
+    public String getCoverArt() {
+        return coverArt;
+    }
+
+    public void setCoverArt(String coverArt) {
+        this.coverArt = coverArt;
+    }
+
+    public List<Track> getTracks() {
+        return tracks;
+    }
+
+    public void setTracks(List<Track> tracks) {
+        this.tracks = tracks;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mlmusik.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only listing row of an album with its songs, selected column by column instead of
+ * loading the entity graph. Serializes like {@link Album}.
+ */
+public class AlbumListing {
+    private Long id;
+    private String title;
+    private String artist;
+    private String coverArtPath;
+    private String coverArtEtag;
+    private Long totalViews;
+    private Long totalDownloads;
+    private Long totalLikes;
+    private Long totalDislikes;
+    private Long totalShares;
+    private LocalDateTime createdAt;
+    private List<SongListing> songs = new ArrayList<>();
+
+    // Constructors
+    public AlbumListing() {}
+
+    /**
+     * Used by constructor expressions in repository queries; songs are added afterwards
+     */
+    public AlbumListing(Long id, String title, String artist, String coverArtPath, String coverArtEtag,
+                        Long totalViews, Long totalDownloads, Long totalLikes, Long totalDislikes,
+                        Long totalShares, LocalDateTime createdAt) {
+        this.id = id;
+        this.title = title;
+        this.artist = artist;
+        this.coverArtPath = coverArtPath;
+        this.coverArtEtag = coverArtEtag;
+        this.totalViews = totalViews;
+        this.totalDownloads = totalDownloads;
+        this.totalLikes = totalLikes;
+        this.totalDislikes = totalDislikes;
+        this.totalShares = totalShares;
+        this.createdAt = createdAt;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public void setArtist(String artist) {
+        this.artist = artist;
+    }
+
+    public String getCoverArtPath() {
+        return coverArtPath;
+    }
+
+    public void setCoverArtPath(String coverArtPath) {
+        this.coverArtPath = coverArtPath;
+    }
+
+    public String getCoverArtEtag() {
+        return coverArtEtag;
+    }
+
+    public void setCoverArtEtag(String coverArtEtag) {
+        this.coverArtEtag = coverArtEtag;
+    }
+
+    public Long getTotalViews() {
+        return totalViews;
+    }
+
+    public void setTotalViews(Long totalViews) {
+        this.totalViews = totalViews;
+    }
+
+    public Long getTotalDownloads() {
+        return totalDownloads;
+    }
+
+    public void setTotalDownloads(Long totalDownloads) {
+        this.totalDownloads = totalDownloads;
+    }
+
+    public Long getTotalLikes() {
+        return totalLikes;
+    }
+
+    public void setTotalLikes(Long totalLikes) {
+        this.totalLikes = totalLikes;
+    }
+
+    public Long getTotalDislikes() {
+        return totalDislikes;
+    }
+
+    public void setTotalDislikes(Long totalDislikes) {
+        this.totalDislikes = totalDislikes;
+    }
+
+    public Long getTotalShares() {
+        return totalShares;
+    }
+
+    public void setTotalShares(Long totalShares) {
+        this.totalShares = totalShares;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<SongListing> getSongs() {
+        return songs;
+    }
+
+    public void setSongs(List<SongListing> songs) {
+        this.songs = songs;
+    }
+}
@@ -0,0 +1,188 @@
+package com.mlmusik.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An accepted upload whose tagging and persistence run in the background. The uploaded files
+ * wait in the job's spool directory; the manifest describes them (an AlbumImport, one track
+ * for a single) so a job can be picked up again after a restart.
+ */
+@Entity
+@Table(name = "ingest_jobs", indexes = {
+        @Index(name = "idx_ingest_jobs_status", columnList = "status")
+})
+public class IngestJob {
+
+    public enum Type {
+        SONG, ALBUM
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Client-chosen key of the upload request; a retry with the same key gets this job back
+    @JsonIgnore
+    @Column(name = "idempotency_key", unique = true)
+    private String idempotencyKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Type type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.QUEUED;
+
+    @JsonIgnore
+    @Column(name = "spool_dir", nullable = false)
+    private String spoolDir;
+
+    @JsonIgnore
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String manifest;
+
+    @Column(name = "total_tracks")
+    private int totalTracks;
+
+    @Column(name = "completed_tracks")
+    private int completedTracks;
+
+    // Id of the created song or album once the job succeeded
+    @Column(name = "result_id")
+    private Long resultId;
+
+    @Column(length = 1000)
+    private String message;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    // Constructors
+    public IngestJob() {}
+
+    public IngestJob(Type type, String idempotencyKey, String spoolDir, String manifest, int totalTracks) {
+        this.type = type;
+        this.idempotencyKey = idempotencyKey;
+        this.spoolDir = spoolDir;
+        this.manifest = manifest;
+        this.totalTracks = totalTracks;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getSpoolDir() {
+        return spoolDir;
+    }
+
+    public void setSpoolDir(String spoolDir) {
+        this.spoolDir = spoolDir;
+    }
+
+    public String getManifest() {
+        return manifest;
+    }
+
+    public void setManifest(String manifest) {
+        this.manifest = manifest;
+    }
+
+    public int getTotalTracks() {
+        return totalTracks;
+    }
+
+    public void setTotalTracks(int totalTracks) {
+        this.totalTracks = totalTracks;
+    }
+
+    public int getCompletedTracks() {
+        return completedTracks;
+    }
+
+    public void setCompletedTracks(int completedTracks) {
+        this.completedTracks = completedTracks;
+    }
+
+    public Long getResultId() {
+        return resultId;
+    }
+
+    public void setResultId(Long resultId) {
+        this.resultId = resultId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
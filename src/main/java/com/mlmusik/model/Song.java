@@ -6,11 +6,27 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "songs")
+// Each listing sort, alone and under each filter, is paired with id so keyset pages are a single index range scan
+@Table(name = "songs", indexes = {
+        @Index(name = "idx_songs_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_songs_views_id", columnList = "views, id"),
+        @Index(name = "idx_songs_likes_id", columnList = "likes, id"),
+        @Index(name = "idx_songs_downloads_id", columnList = "downloads, id"),
+        @Index(name = "idx_songs_artist_created_at_id", columnList = "artist, created_at, id"),
+        @Index(name = "idx_songs_artist_views_id", columnList = "artist, views, id"),
+        @Index(name = "idx_songs_artist_likes_id", columnList = "artist, likes, id"),
+        @Index(name = "idx_songs_artist_downloads_id", columnList = "artist, downloads, id"),
+        @Index(name = "idx_songs_producer_created_at_id", columnList = "producer, created_at, id"),
+        @Index(name = "idx_songs_producer_views_id", columnList = "producer, views, id"),
+        @Index(name = "idx_songs_producer_likes_id", columnList = "producer, likes, id"),
+        @Index(name = "idx_songs_producer_downloads_id", columnList = "producer, downloads, id")
+})
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Song {
+    // Pooled sequence ids let Hibernate batch inserts (one sequence call per 50 songs)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "songs_seq")
+    @SequenceGenerator(name = "songs_seq", sequenceName = "songs_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -34,19 +50,26 @@ public class Song {
     @Column(name = "cover_art_path")
     private String coverArtPath;
 
-    @Column(name = "views")
+    @Column(name = "file_etag")
+    private String fileEtag;
+
+    @Column(name = "cover_art_etag")
+    private String coverArtEtag;
+
+    // Counters are only written by CounterService's batched increments
+    @Column(name = "views", updatable = false)
     private Long views = 0L;
 
-    @Column(name = "likes")
+    @Column(name = "likes", updatable = false)
     private Long likes = 0L;
 
-    @Column(name = "dislikes")
+    @Column(name = "dislikes", updatable = false)
     private Long dislikes = 0L;
 
-    @Column(name = "downloads")
+    @Column(name = "downloads", updatable = false)
     private Long downloads = 0L;
 
-    @Column(name = "shares")
+    @Column(name = "shares", updatable = false)
     private Long shares = 0L;
 
     @Column(name = "share_token", unique = true)
@@ -144,6 +167,22 @@ public class Song {
         this.coverArtPath = coverArtPath;
     }
 
+    public String getFileEtag() {
+        return fileEtag;
+    }
+
+    public void setFileEtag(String fileEtag) {
+        this.fileEtag = fileEtag;
+    }
+
+    public String getCoverArtEtag() {
+        return coverArtEtag;
+    }
+
+    public void setCoverArtEtag(String coverArtEtag) {
+        this.coverArtEtag = coverArtEtag;
+    }
+
     public Long getViews() {
         return views;
     }
@@ -0,0 +1,217 @@
+package com.mlmusik.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.time.LocalDateTime;
+
+/**
+ * Read-only listing row of a song, selected column by column instead of loading the entity.
+ * Serializes like {@link Song}.
+ */
+public class SongListing {
+    private Long id;
+    private String title;
+    private String artist;
+    private String featuredArtists;
+    private String producer;
+    private Integer trackNumber;
+    private String filePath;
+    private String coverArtPath;
+    private String fileEtag;
+    private String coverArtEtag;
+    private Long views;
+    private Long likes;
+    private Long dislikes;
+    private Long downloads;
+    private Long shares;
+    private String shareToken;
+    // Not serialized, like the album back reference of Song
+    @JsonIgnore
+    private Long albumId;
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public SongListing() {}
+
+    /**
+     * Used by constructor expressions in repository queries
+     */
+    public SongListing(Long id, String title, String artist, String featuredArtists, String producer,
+                       Integer trackNumber, String filePath, String coverArtPath, String fileEtag,
+                       String coverArtEtag, Long views, Long likes, Long dislikes, Long downloads,
+                       Long shares, String shareToken, Long albumId, LocalDateTime createdAt) {
+        this.id = id;
+        this.title = title;
+        this.artist = artist;
+        this.featuredArtists = featuredArtists;
+        this.producer = producer;
+        this.trackNumber = trackNumber;
+        this.filePath = filePath;
+        this.coverArtPath = coverArtPath;
+        this.fileEtag = fileEtag;
+        this.coverArtEtag = coverArtEtag;
+        this.views = views;
+        this.likes = likes;
+        this.dislikes = dislikes;
+        this.downloads = downloads;
+        this.shares = shares;
+        this.shareToken = shareToken;
+        this.albumId = albumId;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Listing row of a song that is already loaded
+     */
+    public static SongListing of(Song song) {
+        return new SongListing(song.getId(), song.getTitle(), song.getArtist(), song.getFeaturedArtists(),
+                song.getProducer(), song.getTrackNumber(), song.getFilePath(), song.getCoverArtPath(),
+                song.getFileEtag(), song.getCoverArtEtag(), song.getViews(), song.getLikes(), song.getDislikes(),
+                song.getDownloads(), song.getShares(), song.getShareToken(),
+                song.getAlbum() != null ? song.getAlbum().getId() : null, song.getCreatedAt());
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public void setArtist(String artist) {
+        this.artist = artist;
+    }
+
+    public String getFeaturedArtists() {
+        return featuredArtists;
+    }
+
+    public void setFeaturedArtists(String featuredArtists) {
+        this.featuredArtists = featuredArtists;
+    }
+
+    public String getProducer() {
+        return producer;
+    }
+
+    public void setProducer(String producer) {
+        this.producer = producer;
+    }
+
+    public Integer getTrackNumber() {
+        return trackNumber;
+    }
+
+    public void setTrackNumber(Integer trackNumber) {
+        this.trackNumber = trackNumber;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public String getCoverArtPath() {
+        return coverArtPath;
+    }
+
+    public void setCoverArtPath(String coverArtPath) {
+        this.coverArtPath = coverArtPath;
+    }
+
+    public String getFileEtag() {
+        return fileEtag;
+    }
+
+    public void setFileEtag(String fileEtag) {
+        this.fileEtag = fileEtag;
+    }
+
+    public String getCoverArtEtag() {
+        return coverArtEtag;
+    }
+
+    public void setCoverArtEtag(String coverArtEtag) {
+        this.coverArtEtag = coverArtEtag;
+    }
+
+    public Long getViews() {
+        return views;
+    }
+
+    public void setViews(Long views) {
+        this.views = views;
+    }
+
+    public Long getLikes() {
+        return likes;
+    }
+
+    public void setLikes(Long likes) {
+        this.likes = likes;
+    }
+
+    public Long getDislikes() {
+        return dislikes;
+    }
+
+    public void setDislikes(Long dislikes) {
+        this.dislikes = dislikes;
+    }
+
+    public Long getDownloads() {
+        return downloads;
+    }
+
+    public void setDownloads(Long downloads) {
+        this.downloads = downloads;
+    }
+
+    public Long getShares() {
+        return shares;
+    }
+
+    public void setShares(Long shares) {
+        this.shares = shares;
+    }
+
+    public String getShareToken() {
+        return shareToken;
+    }
+
+    public void setShareToken(String shareToken) {
+        this.shareToken = shareToken;
+    }
+
+    public Long getAlbumId() {
+        return albumId;
+    }
+
+    public void setAlbumId(Long albumId) {
+        this.albumId = albumId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
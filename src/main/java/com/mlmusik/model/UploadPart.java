@@ -0,0 +1,100 @@
+package com.mlmusik.model;
+
+import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+
+/**
+ * One file of a resumable upload (index 0 is the cover art, then the tracks in order) and how
+ * many bytes of it have been received from the start
+ */
+@Entity
+@Table(name = "upload_parts")
+public class UploadPart {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @JsonIgnore
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "session_id", nullable = false)
+    @JsonBackReference
+    private UploadSession session;
+
+    @Column(name = "part_index", nullable = false)
+    private int partIndex;
+
+    // Name of the preallocated file in the session's spool directory
+    @JsonIgnore
+    @Column(name = "spool_file", nullable = false)
+    private String spoolFile;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false)
+    private long received;
+
+    // Constructors
+    public UploadPart() {}
+
+    public UploadPart(UploadSession session, int partIndex, String spoolFile, long size) {
+        this.session = session;
+        this.partIndex = partIndex;
+        this.spoolFile = spoolFile;
+        this.size = size;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public UploadSession getSession() {
+        return session;
+    }
+
+    public void setSession(UploadSession session) {
+        this.session = session;
+    }
+
+    public int getPartIndex() {
+        return partIndex;
+    }
+
+    public void setPartIndex(int partIndex) {
+        this.partIndex = partIndex;
+    }
+
+    public String getSpoolFile() {
+        return spoolFile;
+    }
+
+    public void setSpoolFile(String spoolFile) {
+        this.spoolFile = spoolFile;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public void setReceived(long received) {
+        this.received = received;
+    }
+
+    public boolean isComplete() {
+        return received == size;
+    }
+}
@@ -0,0 +1,131 @@
+package com.mlmusik.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body of a resumable upload request: the metadata of a single ("song") or an album and the
+ * name and size of every file the client is going to send.
+ */
+public class UploadRequest {
+    private String type;
+    private String title;
+    private String artist;
+    private String coverArtFilename;
+    private Long coverArtSize;
+    private List<Track> tracks = new ArrayList<>();
+
+    public static class Track {
+        private String title;
+        private String artist;
+        private String featuredArtists;
+        private String producer;
+        private Integer trackNumber;
+        private String filename;
+        private Long size;
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public String getArtist() {
+            return artist;
+        }
+
+        public void setArtist(String artist) {
+            this.artist = artist;
+        }
+
+        public String getFeaturedArtists() {
+            return featuredArtists;
+        }
+
+        public void setFeaturedArtists(String featuredArtists) {
+            this.featuredArtists = featuredArtists;
+        }
+
+        public String getProducer() {
+            return producer;
+        }
+
+        public void setProducer(String producer) {
+            this.producer = producer;
+        }
+
+        public Integer getTrackNumber() {
+            return trackNumber;
+        }
+
+        public void setTrackNumber(Integer trackNumber) {
+            this.trackNumber = trackNumber;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public void setFilename(String filename) {
+            this.filename = filename;
+        }
+
+        public Long getSize() {
+            return size;
+        }
+
+        public void setSize(Long size) {
+            this.size = size;
+        }
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public void setArtist(String artist) {
+        this.artist = artist;
+    }
+
+    public String getCoverArtFilename() {
+        return coverArtFilename;
+    }
+
+    public void setCoverArtFilename(String coverArtFilename) {
+        this.coverArtFilename = coverArtFilename;
+    }
+
+    public Long getCoverArtSize() {
+        return coverArtSize;
+    }
+
+    public void setCoverArtSize(Long coverArtSize) {
+        this.coverArtSize = coverArtSize;
+    }
+
+    public List<Track> getTracks() {
+        return tracks;
+    }
+
+    public void setTracks(List<Track> tracks) {
+        this.tracks = tracks;
+    }
+}
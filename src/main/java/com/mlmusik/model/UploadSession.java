@@ -0,0 +1,134 @@
+package com.mlmusik.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonManagedReference;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A resumable upload of a single or an album. Its files are preallocated in a spool directory
+ * and filled chunk by chunk; once every file is complete the upload is finalized into an
+ * ingest job that reads the files from that same directory.
+ */
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+    public enum Status {
+        OPEN, FINALIZED
+    }
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private IngestJob.Type type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.OPEN;
+
+    @JsonIgnore
+    @Column(name = "spool_dir", nullable = false)
+    private String spoolDir;
+
+    // AlbumImport manifest of the spooled files, handed to the ingest job on finalize
+    @JsonIgnore
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String manifest;
+
+    @Column(name = "job_id")
+    private Long jobId;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @OneToMany(mappedBy = "session", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
+    @OrderBy("partIndex")
+    @JsonManagedReference
+    private List<UploadPart> parts = new ArrayList<>();
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    // Constructors
+    public UploadSession() {}
+
+    public UploadSession(String id, IngestJob.Type type, String spoolDir, String manifest) {
+        this.id = id;
+        this.type = type;
+        this.spoolDir = spoolDir;
+        this.manifest = manifest;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public IngestJob.Type getType() {
+        return type;
+    }
+
+    public void setType(IngestJob.Type type) {
+        this.type = type;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getSpoolDir() {
+        return spoolDir;
+    }
+
+    public void setSpoolDir(String spoolDir) {
+        this.spoolDir = spoolDir;
+    }
+
+    public String getManifest() {
+        return manifest;
+    }
+
+    public void setManifest(String manifest) {
+        this.manifest = manifest;
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<UploadPart> getParts() {
+        return parts;
+    }
+
+    public void setParts(List<UploadPart> parts) {
+        this.parts = parts;
+    }
+}
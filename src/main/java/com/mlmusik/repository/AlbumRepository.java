@@ -1,11 +1,60 @@
 package com.mlmusik.repository;
 
 import com.mlmusik.model.Album;
+import com.mlmusik.model.AlbumListing;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
-public interface AlbumRepository extends JpaRepository<Album, Long> {
-}
+public interface AlbumRepository extends JpaRepository<Album, Long>, JpaSpecificationExecutor<Album> {
+    String LISTING = "select new com.mlmusik.model.AlbumListing(a.id, a.title, a.artist, a.coverArtPath, "
+            + "a.coverArtEtag, a.totalViews, a.totalDownloads, a.totalLikes, a.totalDislikes, a.totalShares, "
+            + "a.createdAt) from Album a";
+
+    @EntityGraph(attributePaths = "songs")
+    Optional<Album> findWithSongsById(Long id);
+
+    @Query(LISTING + " where a.id in :ids")
+    List<AlbumListing> findListingsByIdIn(@Param("ids") Collection<Long> ids);
 
+    /**
+     * Cover art columns of every album, used to build the path index without loading entities
+     */
+    List<CoverArtView> findAllProjectedBy();
 
+    /**
+     * Summary columns of every album, used to build the suggest index
+     */
+    List<AlbumSummary> findAllSummariesBy();
+
+    interface CoverArtView {
+        Long getId();
+        String getCoverArtPath();
+        String getCoverArtEtag();
+    }
+
+    /**
+     * Album columns shown in listings, without the song list
+     */
+    interface AlbumSummary {
+        Long getId();
+        String getTitle();
+        String getArtist();
+        String getCoverArtPath();
+        Long getTotalViews();
+        Long getTotalDownloads();
+        Long getTotalLikes();
+        Long getTotalDislikes();
+        Long getTotalShares();
+        LocalDateTime getCreatedAt();
+    }
+}
@@ -0,0 +1,45 @@
+package com.mlmusik.repository;
+
+import com.mlmusik.model.IngestJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface IngestJobRepository extends JpaRepository<IngestJob, Long> {
+    Optional<IngestJob> findByIdempotencyKey(String idempotencyKey);
+
+    List<IngestJob> findByStatusInOrderByIdAsc(Collection<IngestJob.Status> statuses);
+
+    /**
+     * Progress update that does not touch the rest of the row
+     */
+    @Modifying
+    @Transactional
+    @Query("update IngestJob j set j.completedTracks = :completed, j.updatedAt = :now where j.id = :id")
+    int updateProgress(@Param("id") Long id, @Param("completed") int completed, @Param("now") LocalDateTime now);
+
+    /**
+     * Marks a job failed unless it has already succeeded
+     * @return 0 if the job had succeeded (or does not exist)
+     */
+    default int markFailed(Long id, int completed, String message, LocalDateTime now) {
+        return failUnless(id, IngestJob.Status.FAILED, IngestJob.Status.SUCCEEDED, completed, message, now);
+    }
+
+    @Modifying
+    @Transactional
+    @Query("update IngestJob j set j.status = :failed, j.completedTracks = :completed, j.resultId = null, "
+            + "j.message = :message, j.updatedAt = :now where j.id = :id and j.status <> :succeeded")
+    int failUnless(@Param("id") Long id, @Param("failed") IngestJob.Status failed,
+                   @Param("succeeded") IngestJob.Status succeeded, @Param("completed") int completed,
+                   @Param("message") String message, @Param("now") LocalDateTime now);
+}
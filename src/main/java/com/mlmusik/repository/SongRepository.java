@@ -1,16 +1,80 @@
 package com.mlmusik.repository;
 
 import com.mlmusik.model.Song;
+import com.mlmusik.model.SongListing;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface SongRepository extends JpaRepository<Song, Long> {
+public interface SongRepository extends JpaRepository<Song, Long>, JpaSpecificationExecutor<Song> {
+    String LISTING = "select new com.mlmusik.model.SongListing(s.id, s.title, s.artist, s.featuredArtists, "
+            + "s.producer, s.trackNumber, s.filePath, s.coverArtPath, s.fileEtag, s.coverArtEtag, s.views, "
+            + "s.likes, s.dislikes, s.downloads, s.shares, s.shareToken, s.album.id, s.createdAt) from Song s";
+
     List<Song> findByAlbumId(Long albumId);
+
+    /**
+     * Albums containing any of the given songs
+     */
+    @Query("select distinct s.album.id from Song s where s.id in :ids and s.album.id is not null")
+    List<Long> findAlbumIdsByIdIn(@Param("ids") Collection<Long> ids);
+
     Optional<Song> findByShareToken(String shareToken);
-}
 
+    @Query(LISTING + " where s.id in :ids")
+    List<SongListing> findListingsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Songs of the given albums as listing rows, in track order
+     */
+    @Query(LISTING + " where s.album.id in :albumIds order by s.trackNumber, s.id")
+    List<SongListing> findListingsByAlbumIdIn(@Param("albumIds") Collection<Long> albumIds);
+
+    /**
+     * File columns of every song, used to build the path index without loading entities
+     */
+    List<FileView> findAllProjectedBy();
 
+    /**
+     * Searchable text and popularity columns of every song, used to build the suggest index
+     */
+    List<SuggestView> findAllSuggestViewsBy();
+
+    /**
+     * The columns a download needs, in one query
+     */
+    Optional<DownloadView> findDownloadViewById(Long id);
+
+    interface DownloadView {
+        Long getId();
+        String getTitle();
+        String getArtist();
+        String getFilePath();
+        String getFileEtag();
+    }
+
+    interface SuggestView {
+        Long getId();
+        String getTitle();
+        String getArtist();
+        String getFeaturedArtists();
+        String getProducer();
+        Long getViews();
+        Long getLikes();
+    }
+
+    interface FileView {
+        Long getId();
+        String getFilePath();
+        String getFileEtag();
+        String getCoverArtPath();
+        String getCoverArtEtag();
+    }
+}
@@ -0,0 +1,22 @@
+package com.mlmusik.repository;
+
+import com.mlmusik.model.UploadPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface UploadPartRepository extends JpaRepository<UploadPart, Long> {
+
+    /**
+     * Moves the received offset of a part forward, only if it is still where the chunk started
+     * @return 1 if the offset was moved, 0 if another chunk got there first
+     */
+    @Modifying
+    @Transactional
+    @Query("update UploadPart p set p.received = :received where p.id = :id and p.received = :expected")
+    int advance(@Param("id") Long id, @Param("expected") long expected, @Param("received") long received);
+}
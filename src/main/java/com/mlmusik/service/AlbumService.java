@@ -1,15 +1,41 @@
 package com.mlmusik.service;
 
 import com.mlmusik.model.Album;
+import com.mlmusik.model.AlbumImport;
+import com.mlmusik.model.AlbumListing;
 import com.mlmusik.model.Song;
+import com.mlmusik.model.SongListing;
 import com.mlmusik.repository.AlbumRepository;
 import com.mlmusik.repository.SongRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Service
 public class AlbumService {
@@ -20,99 +46,352 @@ public class AlbumService {
     @Autowired
     private SongRepository songRepository;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CatalogCache catalogCache;
+
+    @Autowired
+    private SuggestIndex suggestIndex;
+
     @Autowired
     private FileStorageService fileStorageService;
 
     @Autowired
     private MP3MetadataService mp3MetadataService;
 
-    public List<Album> getAllAlbums() {
-        return albumRepository.findAll();
+    @Autowired
+    private FilePathIndex filePathIndex;
+
+    @Autowired
+    private HotSegmentCache hotSegmentCache;
+
+    @Autowired
+    private SeekIndexService seekIndexService;
+
+    @Autowired
+    private HlsService hlsService;
+
+    @Autowired
+    private CounterService counterService;
+
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private ListenerService listenerService;
+
+    @Value("${ingest.workers:0}")
+    private int ingestWorkers;
+
+    @Value("${ingest.queue-capacity:500}")
+    private int ingestQueueCapacity;
+
+    private ExecutorService ingestPool;
+
+    /**
+     * Bounded pool for storing and tagging album tracks; when its queue is full the uploading
+     * thread runs the task itself, which throttles concurrent uploads
+     */
+    @PostConstruct
+    public void startIngestPool() {
+        int workers = ingestWorkers > 0 ? ingestWorkers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threads = new AtomicInteger();
+        ingestPool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(ingestQueueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "album-ingest-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
     }
 
-    public Optional<Album> getAlbumById(Long id) {
-        return albumRepository.findById(id);
+    @PreDestroy
+    public void stopIngestPool() {
+        ingestPool.shutdown();
     }
 
-    public Album createAlbum(String title, String artist, MultipartFile coverArt) throws Exception {
-        // Store cover art
-        String coverArtPath = fileStorageService.storeCoverArt(coverArt);
+    /**
+     * One keyset page of album summaries (without song lists), optionally filtered by artist.
+     * Totals are the stored roll-ups, which lag pending counters by at most one flush interval.
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public Keyset.Page<AlbumRepository.AlbumSummary> getAlbumsPage(Keyset.SortKey sortKey, Sort.Direction direction,
+                                                                  String cursor, int limit, String artist) {
+        String property = sortKey.getAlbumProperty();
+        Keyset.Cursor after = cursor != null ? Keyset.Cursor.decode(cursor, sortKey) : null;
+        Specification<Album> spec = Specification.<Album>where(Keyset.equalTo("artist", artist))
+                .and(Keyset.after(property, direction, after));
+        List<AlbumRepository.AlbumSummary> rows = albumRepository.findBy(spec, query -> query
+                .as(AlbumRepository.AlbumSummary.class)
+                .sortBy(Keyset.sort(property, direction))
+                .limit(limit + 1)
+                .all());
 
-        // Create album
-        Album album = new Album(title, artist, coverArtPath);
-        return albumRepository.save(album);
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+            AlbumRepository.AlbumSummary last = rows.get(limit - 1);
+            nextCursor = Keyset.Cursor.encode(sortValue(last, sortKey), last.getId());
+        }
+        return new Keyset.Page<>(rows, nextCursor);
     }
 
-    public Album createAlbumWithSongs(String title, String artist, MultipartFile coverArt,
-                                      String[] songTitles, String[] songArtists, String[] songFeaturedArtists,
-                                      String[] songProducers, Integer[] songTrackNumbers, MultipartFile[] mp3Files) throws Exception {
-        // Store cover art
-        String coverArtPath = fileStorageService.storeCoverArt(coverArt);
+    private Object sortValue(AlbumRepository.AlbumSummary album, Keyset.SortKey sortKey) {
+        switch (sortKey) {
+            case VIEWS:
+                return album.getTotalViews();
+            case LIKES:
+                return album.getTotalLikes();
+            case DOWNLOADS:
+                return album.getTotalDownloads();
+            default:
+                return album.getCreatedAt();
+        }
+    }
 
-        // Create album
-        Album album = new Album(title, artist, coverArtPath);
-        album = albumRepository.save(album);
+    public Optional<Album> getAlbumById(Long id) {
+        return catalogCache.getAlbum(id).map(counterService::applyPending);
+    }
 
-        // Process each song
-        for (int i = 0; i < songTitles.length; i++) {
-            String songTitle = songTitles[i];
-            String songArtist = songArtists[i];
-            String featuredArtists = (songFeaturedArtists != null && i < songFeaturedArtists.length) 
-                    ? songFeaturedArtists[i] : null;
-            String producer = songProducers[i];
-            Integer trackNumber = songTrackNumbers[i];
-            MultipartFile mp3File = mp3Files[i];
+    /**
+     * Albums by id in the order of the given ids; ids that no longer exist are skipped
+     */
+    public List<AlbumListing> getAlbumsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, AlbumListing> byId = new HashMap<>();
+        for (AlbumListing album : withSongs(albumRepository.findListingsByIdIn(ids),
+                songRepository.findListingsByAlbumIdIn(ids))) {
+            byId.put(album.getId(), album);
+        }
+        List<AlbumListing> albums = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            AlbumListing album = byId.get(id);
+            if (album != null) {
+                albums.add(album);
+            }
+        }
+        return albums;
+    }
 
-            // Store MP3 file (returns filename only)
-            String mp3Filename = fileStorageService.storeSong(mp3File);
+    /**
+     * Attaches songs (in track order) to their albums and applies pending counters
+     */
+    private List<AlbumListing> withSongs(List<AlbumListing> albums, List<SongListing> songs) {
+        Map<Long, AlbumListing> byId = new HashMap<>();
+        for (AlbumListing album : albums) {
+            byId.put(album.getId(), album);
+        }
+        for (SongListing song : songs) {
+            AlbumListing album = byId.get(song.getAlbumId());
+            if (album != null) {
+                album.getSongs().add(song);
+            }
+        }
+        for (AlbumListing album : albums) {
+            counterService.applyPending(album);
+        }
+        return albums;
+    }
 
-            // Get full paths for metadata operations
-            String mp3FullPath = fileStorageService.getSongFullPath(mp3Filename);
-            String coverArtFullPath = fileStorageService.getCoverArtFullPath(album.getCoverArtPath());
+    /**
+     * Imports albums whose files are already on the server (under file.import-dir), one
+     * transaction per album. A failing album does not stop the others.
+     * @return One result per album: title, success and the new album id or an error message
+     */
+    public List<Map<String, Object>> importAlbums(List<AlbumImport> albums) {
+        List<Map<String, Object>> results = new ArrayList<>(albums.size());
+        for (AlbumImport request : albums) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("title", request.getTitle());
+            try {
+                Album album = ingestManifest(request, fileStorageService::resolveImportFile, () -> {}, saved -> {});
+                result.put("success", true);
+                result.put("albumId", album.getId());
+                result.put("tracks", album.getSongs().size());
+            } catch (Exception e) {
+                result.put("success", false);
+                result.put("message", e.getMessage());
+            }
+            results.add(result);
+        }
+        return results;
+    }
 
-            // Set all metadata and embed cover art in a single operation (much faster - 3x speed improvement)
-            mp3MetadataService.setAllMetadata(mp3FullPath, songTitle, songArtist, featuredArtists, producer, trackNumber,
-                                            album.getTitle(), album.getArtist(), coverArtFullPath);
+    /**
+     * Ingests an album whose files were spooled by an ingest job; the manifest's paths are
+     * relative to the spool directory
+     * @param onTrackDone Called after each track is tagged and packaged
+     * @param inTransaction Called with the saved album inside the inserting transaction
+     */
+    public Album createAlbumFromSpool(AlbumImport manifest, Path spoolDir, Runnable onTrackDone,
+                                      Consumer<Album> inTransaction) throws Exception {
+        return ingestManifest(manifest, spoolDir::resolve, onTrackDone, inTransaction);
+    }
+
+    private Album ingestManifest(AlbumImport request, FileResolver files, Runnable onTrackDone,
+                                 Consumer<Album> inTransaction) throws Exception {
+        List<TrackInput> tracks = new ArrayList<>(request.getTracks().size());
+        for (AlbumImport.Track track : request.getTracks()) {
+            tracks.add(new TrackInput(track.getTitle(),
+                    track.getArtist() != null ? track.getArtist() : request.getArtist(),
+                    track.getFeaturedArtists(), track.getProducer(), track.getTrackNumber(), track.getFile(),
+                    () -> Files.newInputStream(files.resolve(track.getFile()))));
+        }
+        return ingestAlbum(request.getTitle(), request.getArtist(),
+                () -> fileStorageService.storeCoverArt(files.resolve(request.getCoverArt())),
+                tracks, onTrackDone, inTransaction);
+    }
 
-            // Create song - store only filename in database
-            Song song = new Song(songTitle, songArtist, featuredArtists, producer, trackNumber, mp3Filename, album.getCoverArtPath());
-            song.setAlbum(album);
-            song = songRepository.save(song);
+    /**
+     * Tags, stores and packages the tracks of a new album on the ingest pool, then inserts the
+     * album and its songs (in track order) in one transaction. If any track or the insert fails,
+     * no row is written and every file stored for the album is deleted again.
+     */
+    private Album ingestAlbum(String title, String artist, StoreStep coverArt, List<TrackInput> tracks,
+                              Runnable onTrackDone, Consumer<Album> inTransaction) throws Exception {
+        String coverArtPath = coverArt.store();
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        Album saved;
+        try {
+            Album album = newAlbum(title, artist, coverArtPath);
+            AtomicBoolean failed = new AtomicBoolean();
+            List<Future<Song>> futures = new ArrayList<>(tracks.size());
+            for (TrackInput track : tracks) {
+                futures.add(ingestPool.submit(() -> {
+                    if (failed.get()) {
+                        return null; // another track already failed, skip the work
+                    }
+                    try {
+                        // Registered before writing, so a partly written track is cleaned up too
+                        String mp3Filename = fileStorageService.newSongFilename(track.originalFilename);
+                        written.add(mp3Filename);
+                        Song song = prepareTrack(album, track.title, track.artist, track.featuredArtists,
+                                track.producer, track.trackNumber, mp3Filename, track.source.open());
+                        onTrackDone.run();
+                        return song;
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }));
+            }
 
-            album.getSongs().add(song);
+            // Wait for every task, so no file is written after the cleanup below
+            Exception failure = null;
+            for (Future<Song> future : futures) {
+                try {
+                    album.getSongs().add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            saved = transactionTemplate.execute(status -> {
+                Album inserted = albumRepository.save(album);
+                inTransaction.accept(inserted);
+                return inserted;
+            });
+        } catch (Exception e) {
+            discard(coverArtPath, written);
+            throw e;
         }
 
-        // Save album with all songs
-        return albumRepository.save(album);
+        filePathIndex.register(saved);
+        catalogCache.evictAlbum(saved.getId());
+        suggestIndex.add(saved);
+        for (Song song : saved.getSongs()) {
+            catalogCache.evictSong(song.getId());
+            suggestIndex.add(song);
+        }
+        return saved;
     }
 
-    public Album addSongToAlbum(Long albumId, String title, String artist, String featuredArtists,
-                                String producer, Integer trackNumber, MultipartFile mp3File) throws Exception {
-        Optional<Album> albumOpt = albumRepository.findById(albumId);
-        if (!albumOpt.isPresent()) {
-            throw new RuntimeException("Album not found");
+    /**
+     * Deletes the files of an album ingest that did not commit
+     */
+    private void discard(String coverArtPath, List<String> mp3Filenames) {
+        fileStorageService.deleteCoverArt(coverArtPath);
+        synchronized (mp3Filenames) {
+            for (String mp3Filename : mp3Filenames) {
+                seekIndexService.remove(mp3Filename);
+                hlsService.remove(mp3Filename);
+                fileStorageService.deleteSong(mp3Filename);
+            }
         }
+    }
 
-        Album album = albumOpt.get();
-
-        // Store MP3 file (returns filename only)
-        String mp3Filename = fileStorageService.storeSong(mp3File);
+    private Album newAlbum(String title, String artist, String coverArtPath) {
+        Album album = new Album(title, artist, coverArtPath);
+        album.setCoverArtEtag(fileStorageService.computeContentDigest(
+                fileStorageService.getCoverArtFullPath(coverArtPath)));
+        return album;
+    }
 
-        // Get full paths for metadata operations
+    /**
+     * Writes the tagged MP3 of a track in one pass from its source stream, packages it and
+     * returns its (not yet persisted) song
+     * @throws IOException if the source contains no MPEG audio frames
+     */
+    private Song prepareTrack(Album album, String title, String artist, String featuredArtists, String producer,
+                              Integer trackNumber, String mp3Filename, InputStream source) throws Exception {
         String mp3FullPath = fileStorageService.getSongFullPath(mp3Filename);
         String coverArtFullPath = fileStorageService.getCoverArtFullPath(album.getCoverArtPath());
 
-        // Set all metadata and embed cover art in a single operation (much faster - 3x speed improvement)
-        mp3MetadataService.setAllMetadata(mp3FullPath, title, artist, featuredArtists, producer, trackNumber,
-                                        album.getTitle(), album.getArtist(), coverArtFullPath);
+        // The tag goes in front of the copied audio, so the file is written once; the digest is its ETag
+        MP3MetadataService.TaggedFile tagged = mp3MetadataService.writeTagged(source, mp3FullPath, title, artist,
+                featuredArtists, producer, trackNumber, album.getTitle(), album.getArtist(), coverArtFullPath);
+        if (tagged.getSeekIndex().getTotalFrames() == 0) {
+            throw new IOException("Not a valid MP3 file: no audio frames found in \"" + title + "\"");
+        }
+        // A track is never accepted without its seek index; HLS packaging reuses it
+        seekIndexService.save(mp3FullPath, tagged.getSeekIndex());
+        hlsService.segment(mp3FullPath);
 
         // Create song - store only filename in database
         Song song = new Song(title, artist, featuredArtists, producer, trackNumber, mp3Filename, album.getCoverArtPath());
+        song.setFileEtag(tagged.getEtag());
+        song.setCoverArtEtag(album.getCoverArtEtag());
         song.setAlbum(album);
+        return song;
+    }
+
+    public Album addSongToAlbum(Long albumId, String title, String artist, String featuredArtists,
+                                String producer, Integer trackNumber, MultipartFile mp3File) throws Exception {
+        Optional<Album> albumOpt = albumRepository.findById(albumId);
+        if (!albumOpt.isPresent()) {
+            throw new RuntimeException("Album not found");
+        }
+
+        Album album = albumOpt.get();
+
+        String mp3Filename = fileStorageService.newSongFilename(mp3File.getOriginalFilename());
+        Song song;
+        try {
+            song = prepareTrack(album, title, artist, featuredArtists, producer, trackNumber,
+                    mp3Filename, mp3File.getInputStream());
+        } catch (Exception e) {
+            discard(null, List.of(mp3Filename));
+            throw e;
+        }
         song = songRepository.save(song);
 
         album.getSongs().add(song);
-        return albumRepository.save(album);
+        filePathIndex.register(song);
+        album = albumRepository.save(album);
+        catalogCache.evictAlbum(albumId);
+        catalogCache.evictSong(song.getId());
+        suggestIndex.add(song);
+        return album;
     }
 
     public Album updateAlbum(Long id, String title, String artist) {
@@ -121,13 +400,87 @@ public class AlbumService {
             Album album = albumOpt.get();
             album.setTitle(title);
             album.setArtist(artist);
-            return albumRepository.save(album);
+            album = albumRepository.save(album);
+            catalogCache.evictAlbum(id);
+            suggestIndex.add(album);
+            return album;
         }
         return null;
     }
 
     public void deleteAlbum(Long id) {
+        List<Long> songIds = new ArrayList<>();
+        albumRepository.findById(id).ifPresent(album -> {
+            for (Song song : album.getSongs()) {
+                songIds.add(song.getId());
+                StoredFile file = filePathIndex.getSongById(song.getId());
+                if (file != null) {
+                    hotSegmentCache.invalidate(file.getName());
+                    seekIndexService.remove(file.getName());
+                    hlsService.remove(file.getName());
+                }
+                counterService.remove(song.getId());
+                trendingService.remove(song.getId());
+                listenerService.removeSong(song.getId());
+            }
+            filePathIndex.remove(album);
+            listenerService.removeAlbum(id);
+        });
         albumRepository.deleteById(id);
+        // Evicted after the delete so a concurrent read cannot cache the album again
+        catalogCache.evictAlbum(id);
+        suggestIndex.removeAlbum(id);
+        for (Long songId : songIds) {
+            catalogCache.evictSong(songId);
+            suggestIndex.removeSong(songId);
+        }
     }
-}
 
+    /**
+     * Stores one uploaded or imported file and returns its stored filename
+     */
+    @FunctionalInterface
+    private interface StoreStep {
+        String store() throws IOException;
+    }
+
+    /**
+     * Resolves a file named in a manifest
+     */
+    @FunctionalInterface
+    private interface FileResolver {
+        Path resolve(String name) throws IOException;
+    }
+
+    /**
+     * Opens the original MP3 of an uploaded or imported track
+     */
+    @FunctionalInterface
+    private interface TrackSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Metadata of one track of an album ingest and where to read its MP3 from
+     */
+    private static final class TrackInput {
+        private final String title;
+        private final String artist;
+        private final String featuredArtists;
+        private final String producer;
+        private final Integer trackNumber;
+        private final String originalFilename;
+        private final TrackSource source;
+
+        private TrackInput(String title, String artist, String featuredArtists, String producer,
+                           Integer trackNumber, String originalFilename, TrackSource source) {
+            this.title = title;
+            this.artist = artist;
+            this.featuredArtists = featuredArtists;
+            this.producer = producer;
+            this.trackNumber = trackNumber;
+            this.originalFilename = originalFilename;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.mlmusik.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of a representation (first and last byte positions are inclusive),
+ * plus the parser for HTTP Range headers (RFC 9110, section 14).
+ */
+public final class ByteRange {
+
+    /** Upper bound on range specs accepted in one header, to keep multipart responses cheap. */
+    static final int MAX_RANGES = 100;
+
+    /** Ranges separated by fewer bytes than this are merged; a part header costs about as much. */
+    private static final long COALESCE_GAP = 80;
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * Value for the Content-Range header of this range
+     * @param completeLength Length of the whole file
+     */
+    public String toContentRange(long completeLength) {
+        return "bytes " + start + "-" + end + "/" + completeLength;
+    }
+
+    /**
+     * Parses a Range header against a file of the given length.
+     * Supports "first-last", open-ended "first-" and suffix "-length" specs, comma separated.
+     * @param header The raw Range header
+     * @param length Length of the file
+     * @return null if the header is absent or malformed (the server must then ignore it),
+     *         an empty list if it is valid but no range overlaps the file (416),
+     *         otherwise the satisfiable ranges, sorted and coalesced
+     */
+    public static List<ByteRange> parse(String header, long length) {
+        if (header == null) {
+            return null;
+        }
+        String value = header.trim();
+        if (value.length() < 6 || !value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] specs = value.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String rawSpec : specs) {
+            String spec = rawSpec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0 || spec.indexOf('-', dash + 1) >= 0) {
+                return null;
+            }
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            try {
+                if (first.isEmpty()) {
+                    // Suffix range: the final N bytes
+                    if (last.isEmpty()) {
+                        return null;
+                    }
+                    long suffixLength = parsePosition(last);
+                    if (suffixLength > 0 && length > 0) {
+                        ranges.add(new ByteRange(Math.max(0, length - suffixLength), length - 1));
+                    }
+                } else {
+                    long rangeStart = parsePosition(first);
+                    long rangeEnd = last.isEmpty() ? Long.MAX_VALUE : parsePosition(last);
+                    if (rangeEnd < rangeStart) {
+                        return null;
+                    }
+                    if (rangeStart < length) {
+                        ranges.add(new ByteRange(rangeStart, Math.min(rangeEnd, length - 1)));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return coalesce(ranges);
+    }
+
+    private static long parsePosition(String digits) {
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid byte position: " + digits);
+            }
+        }
+        return Long.parseLong(digits);
+    }
+
+    /**
+     * Sorts ranges and merges those that overlap or are separated by a small gap
+     */
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(ByteRange::getStart));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            ByteRange next = ranges.get(i);
+            if (next.start <= current.end + COALESCE_GAP) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+}
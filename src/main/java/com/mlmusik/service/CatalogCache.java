@@ -0,0 +1,238 @@
+package com.mlmusik.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mlmusik.model.Album;
+import com.mlmusik.model.Song;
+import com.mlmusik.repository.AlbumRepository;
+import com.mlmusik.repository.SongRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Read-through cache of songs, albums (with their songs) and share tokens.
+ *
+ * Entries are detached snapshots that are never handed out directly: every read returns a
+ * fresh copy, so callers can apply pending counters to it without touching the cache. Misses
+ * for one key are loaded once while concurrent readers wait, and unknown ids and tokens are
+ * cached as empty. Catalog writes evict the affected entries, and so does every counter flush
+ * once it committed: patching cached counters instead would count a delta twice in an entry
+ * that was loaded after the commit. Invalidating a key waits for a load in progress, so no
+ * entry read before the commit survives. Entries expire after a TTL as a bound on any
+ * remaining drift.
+ */
+@Service
+public class CatalogCache {
+
+    // Song ids per album lookup after a flush, well below any bind parameter limit
+    private static final int LOOKUP_BATCH = 1000;
+
+    @Autowired
+    private SongRepository songRepository;
+
+    @Autowired
+    private AlbumRepository albumRepository;
+
+    @Value("${catalog-cache.max-songs:20000}")
+    private long maxSongs;
+
+    @Value("${catalog-cache.max-albums:5000}")
+    private long maxAlbums;
+
+    @Value("${catalog-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private Cache<Long, Optional<Song>> songs;
+    private Cache<Long, Optional<Album>> albums;
+    private Cache<String, Optional<Long>> shareTokens;
+
+    @PostConstruct
+    public void init() {
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        songs = Caffeine.newBuilder().maximumSize(maxSongs).expireAfterWrite(ttl).recordStats().build();
+        albums = Caffeine.newBuilder().maximumSize(maxAlbums).expireAfterWrite(ttl).recordStats().build();
+        shareTokens = Caffeine.newBuilder().maximumSize(maxSongs).expireAfterWrite(ttl).recordStats().build();
+    }
+
+    /**
+     * A copy of the song as stored, without pending counters
+     */
+    public Optional<Song> getSong(Long id) {
+        return songs.get(id, this::loadSong).map(CatalogCache::copy);
+    }
+
+    public Optional<Song> getSongByShareToken(String token) {
+        Optional<Long> id = shareTokens.get(token, key -> songRepository.findByShareToken(key).map(song -> {
+            songs.put(song.getId(), Optional.of(snapshot(song)));
+            return song.getId();
+        }));
+        return id.flatMap(this::getSong);
+    }
+
+    /**
+     * A copy of the album and its songs as stored, without pending counters
+     */
+    public Optional<Album> getAlbum(Long id) {
+        return albums.get(id, this::loadAlbum).map(CatalogCache::copy);
+    }
+
+    /**
+     * Copies of an album's songs; empty if the album does not exist
+     */
+    public List<Song> getAlbumSongs(Long albumId) {
+        return getAlbum(albumId).map(Album::getSongs).orElseGet(ArrayList::new);
+    }
+
+    /**
+     * Drops a song (and the album that contains it) after it was created, changed or deleted.
+     * The album is found from the cached song, else by looking through the cached albums.
+     */
+    public void evictSong(Long songId) {
+        Optional<Song> removed = songs.asMap().remove(songId);
+        Long albumId = removed != null ? removed.map(CatalogCache::albumId).orElse(null) : null;
+        if (albumId != null) {
+            albums.invalidate(albumId);
+            return;
+        }
+        albums.asMap().forEach((id, cached) -> {
+            if (cached.isPresent() && cached.get().getSongs().stream().anyMatch(song -> songId.equals(song.getId()))) {
+                albums.invalidate(id);
+            }
+        });
+    }
+
+    /**
+     * Drops an album after it was created, changed or deleted
+     */
+    public void evictAlbum(Long albumId) {
+        albums.invalidate(albumId);
+    }
+
+    /**
+     * Drops every album, e.g. after the roll-ups were recomputed in bulk
+     */
+    public void evictAllAlbums() {
+        albums.invalidateAll();
+    }
+
+    /**
+     * Drops a (possibly negative) share token entry after the token was assigned
+     */
+    public void evictShareToken(String token) {
+        shareTokens.invalidate(token);
+    }
+
+    /**
+     * Drops songs whose counters were just written to the database, and their albums
+     */
+    public void evictFlushed(List<Long> songIds) {
+        songs.invalidateAll(songIds);
+        Set<Long> albumIds = new HashSet<>();
+        try {
+            for (int i = 0; i < songIds.size(); i += LOOKUP_BATCH) {
+                albumIds.addAll(songRepository.findAlbumIdsByIdIn(
+                        songIds.subList(i, Math.min(i + LOOKUP_BATCH, songIds.size()))));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Could not look up albums of flushed songs, evicting all albums: " + e.getMessage());
+            albums.invalidateAll();
+            return;
+        }
+        albums.invalidateAll(albumIds);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("songs", stats(songs));
+        stats.put("albums", stats(albums));
+        stats.put("shareTokens", stats(shareTokens));
+        return stats;
+    }
+
+    private Optional<Song> loadSong(Long id) {
+        return songRepository.findById(id).map(CatalogCache::snapshot);
+    }
+
+    private Optional<Album> loadAlbum(Long id) {
+        return albumRepository.findWithSongsById(id).map(CatalogCache::copy);
+    }
+
+    private static Long albumId(Song song) {
+        return song.getAlbum() != null ? song.getAlbum().getId() : null;
+    }
+
+    private static Map<String, Object> stats(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRatio", stats.hitRate());
+        result.put("loads", stats.loadCount());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+
+    /**
+     * Detached copy of a loaded song; the album is reduced to its id, which is all song
+     * consumers read from it (the back reference is not serialized)
+     */
+    private static Song snapshot(Song song) {
+        Song copy = copy(song);
+        if (song.getAlbum() != null) {
+            Album album = new Album();
+            album.setId(song.getAlbum().getId());
+            copy.setAlbum(album);
+        }
+        return copy;
+    }
+
+    private static Song copy(Song song) {
+        Song copy = new Song(song.getTitle(), song.getArtist(), song.getFeaturedArtists(), song.getProducer(),
+                song.getTrackNumber(), song.getFilePath(), song.getCoverArtPath());
+        copy.setId(song.getId());
+        copy.setFileEtag(song.getFileEtag());
+        copy.setCoverArtEtag(song.getCoverArtEtag());
+        copy.setViews(song.getViews());
+        copy.setLikes(song.getLikes());
+        copy.setDislikes(song.getDislikes());
+        copy.setDownloads(song.getDownloads());
+        copy.setShares(song.getShares());
+        copy.setShareToken(song.getShareToken());
+        copy.setAlbum(song.getAlbum());
+        copy.setCreatedAt(song.getCreatedAt());
+        return copy;
+    }
+
+    private static Album copy(Album album) {
+        Album copy = new Album(album.getTitle(), album.getArtist(), album.getCoverArtPath());
+        copy.setId(album.getId());
+        copy.setCoverArtEtag(album.getCoverArtEtag());
+        copy.setTotalViews(album.getTotalViews());
+        copy.setTotalDownloads(album.getTotalDownloads());
+        copy.setTotalLikes(album.getTotalLikes());
+        copy.setTotalDislikes(album.getTotalDislikes());
+        copy.setTotalShares(album.getTotalShares());
+        copy.setCreatedAt(album.getCreatedAt());
+        List<Song> songCopies = new ArrayList<>(album.getSongs().size());
+        for (Song song : album.getSongs()) {
+            Song songCopy = copy(song);
+            songCopy.setAlbum(copy);
+            songCopies.add(songCopy);
+        }
+        copy.setSongs(songCopies);
+        return copy;
+    }
+}
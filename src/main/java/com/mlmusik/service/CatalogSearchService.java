@@ -0,0 +1,212 @@
+package com.mlmusik.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ranked, typo-tolerant full-text search over songs and albums in PostgreSQL.
+ *
+ * Each table gets two generated columns: a weighted tsvector (title over artists over producer)
+ * and a lower-cased text for pg_trgm, both with GIN indexes. A row matches when the query's
+ * words are found in the tsvector or when the query is close to a word of the text (trigram
+ * word similarity, which tolerates typos). The score multiplies text rank and similarity by a
+ * logarithmic popularity boost. Only the columns of the returned page are read, and pages
+ * continue after the (score, id) of the previous one.
+ */
+@Service
+public class CatalogSearchService {
+
+    private static final String[] SCHEMA = {
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+            "ALTER TABLE songs ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS ("
+                    + "setweight(to_tsvector('simple'::regconfig, coalesce(title, '')), 'A') || "
+                    + "setweight(to_tsvector('simple'::regconfig, coalesce(artist, '') || ' ' || coalesce(featured_artists, '')), 'B') || "
+                    + "setweight(to_tsvector('simple'::regconfig, coalesce(producer, '')), 'C')) STORED",
+            "ALTER TABLE songs ADD COLUMN IF NOT EXISTS search_text text GENERATED ALWAYS AS ("
+                    + "lower(coalesce(title, '') || ' ' || coalesce(artist, '') || ' ' "
+                    + "|| coalesce(featured_artists, '') || ' ' || coalesce(producer, ''))) STORED",
+            "CREATE INDEX IF NOT EXISTS idx_songs_search_vector ON songs USING GIN (search_vector)",
+            "CREATE INDEX IF NOT EXISTS idx_songs_search_text_trgm ON songs USING GIN (search_text gin_trgm_ops)",
+            "ALTER TABLE albums ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS ("
+                    + "setweight(to_tsvector('simple'::regconfig, coalesce(title, '')), 'A') || "
+                    + "setweight(to_tsvector('simple'::regconfig, coalesce(artist, '')), 'B')) STORED",
+            "ALTER TABLE albums ADD COLUMN IF NOT EXISTS search_text text GENERATED ALWAYS AS ("
+                    + "lower(coalesce(title, '') || ' ' || coalesce(artist, ''))) STORED",
+            "CREATE INDEX IF NOT EXISTS idx_albums_search_vector ON albums USING GIN (search_vector)",
+            "CREATE INDEX IF NOT EXISTS idx_albums_search_text_trgm ON albums USING GIN (search_text gin_trgm_ops)"
+    };
+
+    // Both match conditions are answered by the GIN indexes; only matching rows are scored
+    private static final String SONG_MATCHES = "SELECT s.id, s.title, s.artist, s.featured_artists, s.producer, "
+            + "s.cover_art_path, s.album_id, s.views, "
+            + "((ts_rank_cd(s.search_vector, q.query) + word_similarity(q.text, s.search_text)) "
+            + "* (1 + ln(1 + greatest(coalesce(s.views, 0), 0)::float8) / 10))::float8 AS score "
+            + "FROM songs s, (SELECT websearch_to_tsquery('simple', ?) AS query, lower(?) AS text) q "
+            + "WHERE s.search_vector @@ q.query OR q.text <% s.search_text";
+
+    private static final String ALBUM_MATCHES = "SELECT a.id, a.title, a.artist, a.cover_art_path, a.total_views, "
+            + "((ts_rank_cd(a.search_vector, q.query) + word_similarity(q.text, a.search_text)) "
+            + "* (1 + ln(1 + greatest(coalesce(a.total_views, 0), 0)::float8) / 10))::float8 AS score "
+            + "FROM albums a, (SELECT websearch_to_tsquery('simple', ?) AS query, lower(?) AS text) q "
+            + "WHERE a.search_vector @@ q.query OR q.text <% a.search_text";
+
+    private static final String PAGE = " ORDER BY score DESC, id DESC LIMIT ?";
+    private static final String AFTER = " WHERE (score, id) < (?::float8, ?::bigint)";
+
+    /**
+     * Searchable catalog tables
+     */
+    public enum Type {
+        SONGS, ALBUMS;
+
+        /**
+         * Parses "songs" or "albums"; null if the value is not a supported type
+         */
+        public static Type fromParam(String value) {
+            for (Type type : values()) {
+                if (type.name().equalsIgnoreCase(value)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One search result with the columns a result list shows
+     */
+    public static final class Hit {
+        private final long id;
+        private final String title;
+        private final String artist;
+        private final String featuredArtists;
+        private final String producer;
+        private final String coverArtPath;
+        private final Long albumId;
+        private final long views;
+        private final double score;
+
+        private Hit(long id, String title, String artist, String featuredArtists, String producer,
+                    String coverArtPath, Long albumId, long views, double score) {
+            this.id = id;
+            this.title = title;
+            this.artist = artist;
+            this.featuredArtists = featuredArtists;
+            this.producer = producer;
+            this.coverArtPath = coverArtPath;
+            this.albumId = albumId;
+            this.views = views;
+            this.score = score;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getArtist() {
+            return artist;
+        }
+
+        public String getFeaturedArtists() {
+            return featuredArtists;
+        }
+
+        public String getProducer() {
+            return producer;
+        }
+
+        public String getCoverArtPath() {
+            return coverArtPath;
+        }
+
+        public Long getAlbumId() {
+            return albumId;
+        }
+
+        public long getViews() {
+            return views;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private static final RowMapper<Hit> SONG_HIT = (rs, row) -> new Hit(rs.getLong("id"), rs.getString("title"),
+            rs.getString("artist"), rs.getString("featured_artists"), rs.getString("producer"),
+            rs.getString("cover_art_path"), rs.getObject("album_id", Long.class), rs.getLong("views"),
+            rs.getDouble("score"));
+
+    private static final RowMapper<Hit> ALBUM_HIT = (rs, row) -> new Hit(rs.getLong("id"), rs.getString("title"),
+            rs.getString("artist"), null, null, rs.getString("cover_art_path"), null, rs.getLong("total_views"),
+            rs.getDouble("score"));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile boolean ready;
+
+    /**
+     * Creates the extension, generated columns and indexes if they do not exist yet (after
+     * Hibernate created the tables)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(1)
+    public void ensureSchema() {
+        try {
+            for (String statement : SCHEMA) {
+                jdbcTemplate.execute(statement);
+            }
+            ready = true;
+            System.out.println("Full-text search schema ready");
+        } catch (RuntimeException e) {
+            System.err.println("Full-text search is unavailable: " + e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * One page of results, best first
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public Keyset.Page<Hit> search(Type type, String query, String cursor, int limit) {
+        Keyset.Cursor after = cursor != null ? Keyset.Cursor.decode(cursor, Double::valueOf) : null;
+        String text = query.trim();
+        List<Object> args = new ArrayList<>(List.of(text, text));
+        StringBuilder sql = new StringBuilder("SELECT * FROM (")
+                .append(type == Type.SONGS ? SONG_MATCHES : ALBUM_MATCHES)
+                .append(") m");
+        if (after != null) {
+            sql.append(AFTER);
+            args.add(after.getValue());
+            args.add(after.getId());
+        }
+        sql.append(PAGE);
+        args.add(limit + 1);
+
+        List<Hit> hits = jdbcTemplate.query(sql.toString(), type == Type.SONGS ? SONG_HIT : ALBUM_HIT, args.toArray());
+        String nextCursor = null;
+        if (hits.size() > limit) {
+            hits = new ArrayList<>(hits.subList(0, limit));
+            Hit last = hits.get(limit - 1);
+            nextCursor = Keyset.Cursor.encode(last.getScore(), last.getId());
+        }
+        return new Keyset.Page<>(hits, nextCursor);
+    }
+}
@@ -0,0 +1,322 @@
+package com.mlmusik.service;
+
+import com.mlmusik.model.Album;
+import com.mlmusik.model.AlbumListing;
+import com.mlmusik.model.Song;
+import com.mlmusik.model.SongListing;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind aggregation of song counters (views, likes, dislikes, downloads, shares).
+ *
+ * Events only touch a striped in-memory accumulator; a scheduled flush writes all pending
+ * deltas in one batched UPDATE that adds to the stored values, so concurrent events are never
+ * lost and the database sees a few statements instead of one read-modify-write per event.
+ * Reads merge the deltas that have not been flushed yet. The counter columns are not updatable
+ * through JPA, so saving a song entity can never overwrite them.
+ *
+ * The same flush adds the deltas to the album roll-ups (total_views, total_likes, ...), and a
+ * periodic reconciliation recomputes all roll-ups with one grouped query to correct drift
+ * (e.g. after songs are deleted or moved).
+ */
+@Service
+public class CounterService {
+
+    private static final String FLUSH_SQL = "UPDATE songs SET "
+            + "views = COALESCE(views, 0) + ?, "
+            + "likes = COALESCE(likes, 0) + ?, "
+            + "dislikes = COALESCE(dislikes, 0) + ?, "
+            + "downloads = COALESCE(downloads, 0) + ?, "
+            + "shares = COALESCE(shares, 0) + ? "
+            + "WHERE id = ?";
+
+    private static final String ALBUM_FLUSH_SQL = "UPDATE albums SET "
+            + "total_views = COALESCE(total_views, 0) + ?, "
+            + "total_likes = COALESCE(total_likes, 0) + ?, "
+            + "total_dislikes = COALESCE(total_dislikes, 0) + ?, "
+            + "total_downloads = COALESCE(total_downloads, 0) + ?, "
+            + "total_shares = COALESCE(total_shares, 0) + ? "
+            + "WHERE id = (SELECT album_id FROM songs WHERE id = ?)";
+
+    private static final String RECONCILE_SQL = "UPDATE albums a SET "
+            + "total_views = COALESCE(t.views, 0), "
+            + "total_likes = COALESCE(t.likes, 0), "
+            + "total_dislikes = COALESCE(t.dislikes, 0), "
+            + "total_downloads = COALESCE(t.downloads, 0), "
+            + "total_shares = COALESCE(t.shares, 0) "
+            + "FROM albums b LEFT JOIN ("
+            + "SELECT album_id, SUM(views) AS views, SUM(likes) AS likes, SUM(dislikes) AS dislikes, "
+            + "SUM(downloads) AS downloads, SUM(shares) AS shares "
+            + "FROM songs WHERE album_id IS NOT NULL GROUP BY album_id"
+            + ") t ON t.album_id = b.id "
+            + "WHERE a.id = b.id";
+
+    private static final int COUNTERS = SongCounter.values().length;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EventJournal eventJournal;
+
+    @Autowired
+    private CatalogCache catalogCache;
+
+    private final Map<Long, LongAdder[]> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+
+    /**
+     * Records one event for a song, in the accumulators and in the event journal
+     */
+    public void increment(Long songId, SongCounter counter) {
+        pending.computeIfAbsent(songId, id -> newAccumulators())[counter.ordinal()].increment();
+        events.increment();
+        eventJournal.append(counter, songId);
+    }
+
+    /**
+     * Not yet flushed delta of one counter
+     */
+    public long getPending(Long songId, SongCounter counter) {
+        LongAdder[] accumulators = pending.get(songId);
+        return accumulators != null ? accumulators[counter.ordinal()].sum() : 0;
+    }
+
+    /**
+     * Adds the pending deltas to a song's counters as loaded from the database
+     * @return The same song, for chaining
+     */
+    public Song applyPending(Song song) {
+        if (song == null || song.getId() == null) {
+            return song;
+        }
+        LongAdder[] accumulators = pending.get(song.getId());
+        if (accumulators == null) {
+            return song;
+        }
+        song.setViews(orZero(song.getViews()) + accumulators[SongCounter.VIEWS.ordinal()].sum());
+        song.setLikes(orZero(song.getLikes()) + accumulators[SongCounter.LIKES.ordinal()].sum());
+        song.setDislikes(orZero(song.getDislikes()) + accumulators[SongCounter.DISLIKES.ordinal()].sum());
+        song.setDownloads(orZero(song.getDownloads()) + accumulators[SongCounter.DOWNLOADS.ordinal()].sum());
+        song.setShares(orZero(song.getShares()) + accumulators[SongCounter.SHARES.ordinal()].sum());
+        return song;
+    }
+
+    /**
+     * Adds the pending deltas of an album's songs to its roll-ups as loaded from the database
+     * @return The same album, for chaining
+     */
+    public Album applyPending(Album album) {
+        long views = 0, likes = 0, dislikes = 0, downloads = 0, shares = 0;
+        for (Song song : album.getSongs()) {
+            LongAdder[] accumulators = song.getId() != null ? pending.get(song.getId()) : null;
+            if (accumulators != null) {
+                views += accumulators[SongCounter.VIEWS.ordinal()].sum();
+                likes += accumulators[SongCounter.LIKES.ordinal()].sum();
+                dislikes += accumulators[SongCounter.DISLIKES.ordinal()].sum();
+                downloads += accumulators[SongCounter.DOWNLOADS.ordinal()].sum();
+                shares += accumulators[SongCounter.SHARES.ordinal()].sum();
+            }
+            applyPending(song);
+        }
+        album.setTotalViews(orZero(album.getTotalViews()) + views);
+        album.setTotalLikes(orZero(album.getTotalLikes()) + likes);
+        album.setTotalDislikes(orZero(album.getTotalDislikes()) + dislikes);
+        album.setTotalDownloads(orZero(album.getTotalDownloads()) + downloads);
+        album.setTotalShares(orZero(album.getTotalShares()) + shares);
+        return album;
+    }
+
+    /**
+     * Adds the pending deltas to a song listing row
+     * @return The same row, for chaining
+     */
+    public SongListing applyPending(SongListing song) {
+        LongAdder[] accumulators = song.getId() != null ? pending.get(song.getId()) : null;
+        if (accumulators == null) {
+            return song;
+        }
+        song.setViews(orZero(song.getViews()) + accumulators[SongCounter.VIEWS.ordinal()].sum());
+        song.setLikes(orZero(song.getLikes()) + accumulators[SongCounter.LIKES.ordinal()].sum());
+        song.setDislikes(orZero(song.getDislikes()) + accumulators[SongCounter.DISLIKES.ordinal()].sum());
+        song.setDownloads(orZero(song.getDownloads()) + accumulators[SongCounter.DOWNLOADS.ordinal()].sum());
+        song.setShares(orZero(song.getShares()) + accumulators[SongCounter.SHARES.ordinal()].sum());
+        return song;
+    }
+
+    /**
+     * Adds the pending deltas of an album listing's songs to the songs and the album roll-ups
+     * @return The same row, for chaining
+     */
+    public AlbumListing applyPending(AlbumListing album) {
+        long views = 0, likes = 0, dislikes = 0, downloads = 0, shares = 0;
+        for (SongListing song : album.getSongs()) {
+            LongAdder[] accumulators = song.getId() != null ? pending.get(song.getId()) : null;
+            if (accumulators != null) {
+                views += accumulators[SongCounter.VIEWS.ordinal()].sum();
+                likes += accumulators[SongCounter.LIKES.ordinal()].sum();
+                dislikes += accumulators[SongCounter.DISLIKES.ordinal()].sum();
+                downloads += accumulators[SongCounter.DOWNLOADS.ordinal()].sum();
+                shares += accumulators[SongCounter.SHARES.ordinal()].sum();
+            }
+            applyPending(song);
+        }
+        album.setTotalViews(orZero(album.getTotalViews()) + views);
+        album.setTotalLikes(orZero(album.getTotalLikes()) + likes);
+        album.setTotalDislikes(orZero(album.getTotalDislikes()) + dislikes);
+        album.setTotalDownloads(orZero(album.getTotalDownloads()) + downloads);
+        album.setTotalShares(orZero(album.getTotalShares()) + shares);
+        return album;
+    }
+
+    public List<Song> applyPending(List<Song> songs) {
+        for (Song song : songs) {
+            applyPending(song);
+        }
+        return songs;
+    }
+
+    /**
+     * Drops the pending deltas of a deleted song
+     */
+    public void remove(Long songId) {
+        pending.remove(songId);
+    }
+
+    /**
+     * Writes all pending deltas to the songs and their albums in one transaction. Deltas are
+     * subtracted from the accumulators only after it committed, so a failed flush is simply
+     * retried by the next one.
+     */
+    @Scheduled(fixedDelayString = "${counters.flush-interval-ms:2000}")
+    public synchronized void flush() {
+        List<Long> songIds = new ArrayList<>();
+        List<long[]> deltas = new ArrayList<>();
+        for (Map.Entry<Long, LongAdder[]> entry : pending.entrySet()) {
+            long[] delta = new long[COUNTERS];
+            boolean changed = false;
+            for (int i = 0; i < COUNTERS; i++) {
+                delta[i] = entry.getValue()[i].sum();
+                changed |= delta[i] != 0;
+            }
+            if (changed) {
+                songIds.add(entry.getKey());
+                deltas.add(delta);
+            }
+        }
+        if (songIds.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>(songIds.size());
+        for (int i = 0; i < songIds.size(); i++) {
+            long[] delta = deltas.get(i);
+            rows.add(new Object[]{delta[0], delta[1], delta[2], delta[3], delta[4], songIds.get(i)});
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(FLUSH_SQL, rows);
+                jdbcTemplate.batchUpdate(ALBUM_FLUSH_SQL, rows);
+            });
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            System.err.println("Counter flush failed, retrying later: " + e.getMessage());
+            return;
+        }
+        for (int i = 0; i < songIds.size(); i++) {
+            LongAdder[] accumulators = pending.get(songIds.get(i));
+            if (accumulators == null) {
+                continue; // song deleted meanwhile
+            }
+            long[] delta = deltas.get(i);
+            for (int c = 0; c < COUNTERS; c++) {
+                if (delta[c] != 0) {
+                    accumulators[c].add(-delta[c]);
+                }
+            }
+        }
+        // After the accumulators, so an entry reloaded in between does not keep the delta twice
+        catalogCache.evictFlushed(songIds);
+        flushes.increment();
+        flushedRows.add(songIds.size());
+        lastFlushMillis.set(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Recomputes every album roll-up from its songs in one grouped statement. Pending deltas are
+     * flushed first (under the same lock), so none are counted twice or lost.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(20)
+    @Scheduled(cron = "${counters.album-reconcile-cron:0 30 3 * * *}")
+    public synchronized void reconcileAlbums() {
+        flush();
+        try {
+            int albums = jdbcTemplate.update(RECONCILE_SQL);
+            catalogCache.evictAllAlbums();
+            System.out.println("Album roll-ups reconciled for " + albums + " albums");
+        } catch (RuntimeException e) {
+            System.err.println("Album roll-up reconciliation failed: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    public Map<String, Object> getStats() {
+        long pendingEvents = 0;
+        for (LongAdder[] accumulators : pending.values()) {
+            for (LongAdder accumulator : accumulators) {
+                pendingEvents += accumulator.sum();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("events", events.sum());
+        stats.put("pendingEvents", pendingEvents);
+        stats.put("trackedSongs", pending.size());
+        stats.put("flushes", flushes.sum());
+        stats.put("failedFlushes", failedFlushes.sum());
+        stats.put("flushedRows", flushedRows.sum());
+        stats.put("lastFlushMillis", lastFlushMillis.get());
+        return stats;
+    }
+
+    private static LongAdder[] newAccumulators() {
+        LongAdder[] accumulators = new LongAdder[COUNTERS];
+        for (int i = 0; i < COUNTERS; i++) {
+            accumulators[i] = new LongAdder();
+        }
+        return accumulators;
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0;
+    }
+}
@@ -0,0 +1,522 @@
+package com.mlmusik.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only journal of song interaction events (play, like, dislike, download, share).
+ *
+ * Appending only enqueues the event; a single writer thread drains the queue and writes each
+ * batch with one {@link FileChannel} write (group commit, optionally followed by one fsync).
+ * Records are length-prefixed and checksummed:
+ * [int length][byte type][long sequence][long timestamp][long songId][long count][int crc32].
+ * Segments roll at {@code journal.segment-bytes}; compaction folds old segments into one segment
+ * of per-song, per-type totals.
+ *
+ * The journal is an audit trail next to the database counters, which stay authoritative: appends
+ * may be dropped under overload and counters are never rebuilt from it, so it is not a recovery
+ * log. Startup recovery replays it once into an in-memory fold of per-song totals, and the writer
+ * adds every committed batch to that fold, so {@link #getSongTotals} never rereads the segments.
+ */
+@Service
+public class EventJournal {
+
+    private static final int PAYLOAD_LENGTH = 1 + 8 + 8 + 8 + 8;
+    private static final int RECORD_LENGTH = 4 + PAYLOAD_LENGTH + 4;
+    private static final int MAX_BATCH = 4096;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * A replayed journal record. Compacted records carry the total count of the events they fold.
+     */
+    public static final class Event {
+        private final SongCounter type;
+        private final long sequence;
+        private final long timestamp;
+        private final long songId;
+        private final long count;
+
+        private Event(SongCounter type, long sequence, long timestamp, long songId, long count) {
+            this.type = type;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.songId = songId;
+            this.count = count;
+        }
+
+        public SongCounter getType() {
+            return type;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getSongId() {
+            return songId;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    @Value("${journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${journal.dir:./uploads/journal}")
+    private String journalDir;
+
+    @Value("${journal.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${journal.fsync:false}")
+    private boolean fsync;
+
+    @Value("${journal.retain-segments:4}")
+    private int retainSegments;
+
+    @Value("${journal.queue-capacity:65536}")
+    private int queueCapacity;
+
+    @Value("${journal.append-timeout-ms:5}")
+    private long appendTimeoutMs;
+
+    private BlockingQueue<Event> queue;
+    private Thread writer;
+    private volatile boolean running;
+    private FileChannel active;
+    private Path activePath;
+    private final AtomicLong nextSequence = new AtomicLong(1);
+    private final Object compactionLock = new Object();
+
+    // Per-song totals of every committed record, indexed by SongCounter ordinal, plus the last timestamp
+    private final Map<Long, AtomicLongArray> songTotals = new ConcurrentHashMap<>();
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(Paths.get(journalDir));
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        recover();
+        running = true;
+        writer = new Thread(this::writeLoop, "event-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records an event. When the writer has fallen behind and the queue is full, the caller waits
+     * up to {@code journal.append-timeout-ms} for room; an event that still does not fit is lost
+     * from the journal (the database counters still get it) and counted as dropped. A request
+     * never blocks longer than that on the audit trail.
+     */
+    public void append(SongCounter type, long songId) {
+        if (!running) {
+            return;
+        }
+        Event event = new Event(type, 0, System.currentTimeMillis(), songId, 1);
+        try {
+            if (queue.offer(event) || queue.offer(event, appendTimeoutMs, TimeUnit.MILLISECONDS)) {
+                appended.increment();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.sum() == 0) {
+            System.err.println("Journal queue full, dropping events (see /stats/journal)");
+        }
+        dropped.increment();
+    }
+
+    /**
+     * Replays all records with a sequence number at or above fromSequence, in journal order.
+     * Reading stops at the first torn or corrupt record of a segment. Holds the compaction lock,
+     * so segments are not replaced or deleted while they are read. For audits and tooling; the
+     * database counters are not recovered from it.
+     */
+    public void replay(long fromSequence, Consumer<Event> consumer) throws IOException {
+        synchronized (compactionLock) {
+            replaySegments(listSegments(), event -> {
+                if (event.sequence >= fromSequence) {
+                    consumer.accept(event);
+                }
+            });
+        }
+    }
+
+    /**
+     * Journal totals of one song, indexed by {@link SongCounter#ordinal()}, followed by the
+     * timestamp of its last event
+     * @return null if the journal has no event for the song
+     */
+    public long[] getSongTotals(long songId) {
+        AtomicLongArray totals = songTotals.get(songId);
+        if (totals == null) {
+            return null;
+        }
+        long[] copy = new long[totals.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = totals.get(i);
+        }
+        return copy;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Folds all but the newest segments into a single segment of per-song, per-type totals.
+     * The folded segment replaces the oldest one atomically, then the others are deleted.
+     */
+    @Scheduled(fixedDelayString = "${journal.compaction-interval-ms:3600000}")
+    public void compact() {
+        if (!running) {
+            return;
+        }
+        synchronized (compactionLock) {
+            try {
+                List<Path> segments = listSegments();
+                // The newest segment is the active one; keep the most recent closed ones as they are
+                int foldCount = segments.size() - 1 - retainSegments;
+                if (foldCount < 2) {
+                    return;
+                }
+                List<Path> folded = segments.subList(0, foldCount);
+                Map<Long, long[]> totals = new LinkedHashMap<>();
+                long[] lastTimestamp = new long[1];
+                long[] lastSequence = new long[1];
+                replaySegments(folded, event -> {
+                    totals.computeIfAbsent(event.songId, id -> new long[SongCounter.values().length])
+                            [event.type.ordinal()] += event.count;
+                    lastTimestamp[0] = Math.max(lastTimestamp[0], event.timestamp);
+                    lastSequence[0] = Math.max(lastSequence[0], event.sequence);
+                });
+
+                Path target = folded.get(0);
+                Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(RECORD_LENGTH * 256);
+                    for (Map.Entry<Long, long[]> song : totals.entrySet()) {
+                        for (SongCounter type : SongCounter.values()) {
+                            long count = song.getValue()[type.ordinal()];
+                            if (count == 0) {
+                                continue;
+                            }
+                            if (buffer.remaining() < RECORD_LENGTH) {
+                                writeFully(out, buffer);
+                            }
+                            encode(buffer, new Event(type, lastSequence[0], lastTimestamp[0], song.getKey(), count));
+                        }
+                    }
+                    writeFully(out, buffer);
+                    out.force(true);
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                for (Path segment : folded.subList(1, folded.size())) {
+                    Files.deleteIfExists(segment);
+                }
+                compactions.increment();
+            } catch (IOException e) {
+                System.err.println("Journal compaction failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("appended", appended.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("queued", queue != null ? queue.size() : 0);
+        stats.put("groupCommits", groups.sum());
+        stats.put("bytesWritten", bytesWritten.sum());
+        stats.put("nextSequence", nextSequence.get());
+        stats.put("songs", songTotals.size());
+        stats.put("compactions", compactions.sum());
+        try {
+            stats.put("segments", listSegments().size());
+        } catch (IOException e) {
+            stats.put("segments", -1);
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Finds the last valid record, truncates a torn tail left by a crash and continues the sequence.
+     * The same pass rebuilds the per-song totals.
+     */
+    private void recover() throws IOException {
+        List<Path> segments = listSegments();
+        if (segments.isEmpty()) {
+            openSegment();
+            return;
+        }
+        long[] highest = new long[1];
+        replaySegments(segments, event -> {
+            highest[0] = Math.max(highest[0], event.sequence);
+            fold(event);
+        });
+        nextSequence.set(highest[0] + 1);
+
+        activePath = segments.get(segments.size() - 1);
+        active = FileChannel.open(activePath, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+        long position = 0;
+        while (readRecord(active, position, record)) {
+            position += RECORD_LENGTH;
+        }
+        if (position < active.size()) {
+            active.truncate(position);
+        }
+        active.position(position);
+    }
+
+    private void writeLoop() {
+        List<Event> batch = new ArrayList<>(MAX_BATCH);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_LENGTH * MAX_BATCH);
+        // Keeps draining after stop() until the queue is empty
+        while (running || !queue.isEmpty()) {
+            try {
+                Event first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                writeBatch(batch, buffer);
+            } catch (InterruptedException e) {
+                // Not interrupted by stop(); an interrupt would close the channel mid-write
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                System.err.println("Journal write failed, " + batch.size() + " events lost: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+        closeActive();
+    }
+
+    /**
+     * One group commit: sequence numbers are assigned in write order, the whole batch goes out
+     * in one write, and the segment is rolled afterwards if it has grown past its limit.
+     * A failed write may leave a torn record behind, and replay stops at the first torn record
+     * of a segment, so the segment is cut back to where the batch started and closed; the next
+     * batch goes to a new segment.
+     */
+    private void writeBatch(List<Event> batch, ByteBuffer buffer) throws IOException {
+        if (active == null) {
+            openSegment();
+        }
+        buffer.clear();
+        for (Event event : batch) {
+            encode(buffer, new Event(event.type, nextSequence.getAndIncrement(), event.timestamp, event.songId,
+                    event.count));
+        }
+        bytesWritten.add(buffer.position());
+        long start = active.position();
+        try {
+            writeFully(active, buffer);
+            if (fsync) {
+                active.force(false);
+            }
+        } catch (IOException e) {
+            abandonActive(start);
+            throw e;
+        }
+        groups.increment();
+        for (Event event : batch) {
+            fold(event);
+        }
+        if (active.position() >= segmentBytes) {
+            closeActive();
+            // Opened by the next batch, so a failure here does not fail this committed one
+            active = null;
+        }
+    }
+
+    private void fold(Event event) {
+        AtomicLongArray totals = songTotals.computeIfAbsent(event.songId,
+                id -> new AtomicLongArray(SongCounter.values().length + 1));
+        totals.addAndGet(event.type.ordinal(), event.count);
+        int last = totals.length() - 1;
+        totals.accumulateAndGet(last, event.timestamp, Math::max);
+    }
+
+    private void openSegment() throws IOException {
+        activePath = Paths.get(journalDir, String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence.get(), SEGMENT_SUFFIX));
+        active = FileChannel.open(activePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+        active.position(active.size());
+    }
+
+    /**
+     * Drops the partial batch written after start and closes the segment; the next write opens
+     * a new one
+     */
+    private void abandonActive(long start) {
+        try {
+            active.truncate(start);
+        } catch (IOException e) {
+            System.err.println("Could not truncate journal segment " + activePath + ": " + e.getMessage());
+        }
+        closeActive();
+        active = null;
+    }
+
+    private void closeActive() {
+        if (active == null) {
+            return;
+        }
+        try {
+            active.force(false);
+            active.close();
+        } catch (IOException e) {
+            System.err.println("Could not close journal segment: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the given segments in order. Records at or below the highest sequence of the previous
+     * segments were already read: they are leftovers of a compaction that was interrupted after
+     * the folded segment replaced the oldest one, and are skipped.
+     */
+    private void replaySegments(List<Path> segments, Consumer<Event> consumer) throws IOException {
+        long floor = 0;
+        for (Path segment : segments) {
+            long highest = floor;
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+                long position = 0;
+                while (readRecord(channel, position, record)) {
+                    Event event = decode(record);
+                    position += RECORD_LENGTH;
+                    if (event.sequence <= floor) {
+                        continue;
+                    }
+                    highest = Math.max(highest, event.sequence);
+                    consumer.accept(event);
+                }
+            }
+            floor = highest;
+        }
+    }
+
+    /**
+     * Segment files in sequence order (their names carry the first sequence number, zero-padded)
+     */
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(journalDir),
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * Reads and verifies one record at position into the buffer
+     * @return false at the end of the segment or at a torn/corrupt record
+     */
+    private boolean readRecord(FileChannel channel, long position, ByteBuffer record) throws IOException {
+        record.clear();
+        while (record.hasRemaining()) {
+            if (channel.read(record, position + record.position()) < 0) {
+                return false;
+            }
+        }
+        record.flip();
+        if (record.getInt(0) != PAYLOAD_LENGTH) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, PAYLOAD_LENGTH);
+        return (int) crc.getValue() == record.getInt(4 + PAYLOAD_LENGTH);
+    }
+
+    private Event decode(ByteBuffer record) {
+        record.position(4);
+        int type = record.get();
+        long sequence = record.getLong();
+        long timestamp = record.getLong();
+        long songId = record.getLong();
+        long count = record.getLong();
+        return new Event(SongCounter.values()[type], sequence, timestamp, songId, count);
+    }
+
+    private void encode(ByteBuffer buffer, Event event) {
+        int start = buffer.position();
+        buffer.putInt(PAYLOAD_LENGTH);
+        buffer.put((byte) event.type.ordinal());
+        buffer.putLong(event.sequence);
+        buffer.putLong(event.timestamp);
+        buffer.putLong(event.songId);
+        buffer.putLong(event.count);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start + 4).limit(start + 4 + PAYLOAD_LENGTH));
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
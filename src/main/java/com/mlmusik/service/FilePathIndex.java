@@ -0,0 +1,246 @@
+package com.mlmusik.service;
+
+import com.mlmusik.model.Album;
+import com.mlmusik.model.Song;
+import com.mlmusik.repository.AlbumRepository;
+import com.mlmusik.repository.SongRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of resolved upload paths, so serving a file is a map lookup instead of
+ * probing candidate locations on every request.
+ *
+ * Filled at startup from the upload directories and the database, updated on upload and
+ * invalidated on delete. A miss falls back to a single stat in the configured directory.
+ */
+@Service
+public class FilePathIndex {
+
+    @Autowired
+    private SongRepository songRepository;
+
+    @Autowired
+    private AlbumRepository albumRepository;
+
+    @Value("${file.upload.songs-dir}")
+    private String songsDir;
+
+    @Value("${file.upload.cover-art-dir}")
+    private String coverArtDir;
+
+    private final Map<String, StoredFile> songsByFilename = new ConcurrentHashMap<>();
+    private final Map<String, StoredFile> coverArtByFilename = new ConcurrentHashMap<>();
+    private final Map<Long, StoredFile> songsById = new ConcurrentHashMap<>();
+    private final Map<Long, StoredFile> coverArtBySongId = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void rebuild() {
+        scanDirectory(Paths.get(songsDir), songsByFilename);
+        scanDirectory(Paths.get(coverArtDir), coverArtByFilename);
+
+        for (SongRepository.FileView song : songRepository.findAllProjectedBy()) {
+            StoredFile audio = resolveSong(song.getFilePath(), song.getFileEtag());
+            if (audio != null) {
+                songsById.put(song.getId(), audio);
+            }
+            StoredFile cover = resolveCoverArt(song.getCoverArtPath(), song.getCoverArtEtag());
+            if (cover != null) {
+                coverArtBySongId.put(song.getId(), cover);
+            }
+        }
+        for (AlbumRepository.CoverArtView album : albumRepository.findAllProjectedBy()) {
+            resolveCoverArt(album.getCoverArtPath(), album.getCoverArtEtag());
+        }
+        System.out.println("File index ready: " + songsByFilename.size() + " songs, "
+                + coverArtByFilename.size() + " cover art files");
+    }
+
+    /**
+     * Song file by stored filename (e.g. "uuid.mp3")
+     */
+    public StoredFile getSong(String filename) {
+        if (filename == null || filename.isEmpty()) {
+            return null;
+        }
+        StoredFile file = songsByFilename.get(filename);
+        if (file == null && isPlainFilename(filename)) {
+            file = StoredFile.of(new File(songsDir, filename), null);
+            if (file != null) {
+                songsByFilename.put(filename, file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Cover art file by stored filename (e.g. "uuid.jpg")
+     */
+    public StoredFile getCoverArt(String filename) {
+        if (filename == null || filename.isEmpty()) {
+            return null;
+        }
+        StoredFile file = coverArtByFilename.get(filename);
+        if (file == null && isPlainFilename(filename)) {
+            file = StoredFile.of(new File(coverArtDir, filename), null);
+            if (file != null) {
+                coverArtByFilename.put(filename, file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Song file by song id; null if the song is not indexed (callers fall back to the database)
+     */
+    public StoredFile getSongById(Long songId) {
+        return songsById.get(songId);
+    }
+
+    /**
+     * Cover art by song id; null if the song is not indexed
+     */
+    public StoredFile getCoverArtBySongId(Long songId) {
+        return coverArtBySongId.get(songId);
+    }
+
+    /**
+     * Indexes a persisted song (after upload, or after a database fallback lookup)
+     */
+    public StoredFile register(Song song) {
+        StoredFile audio = register(song.getId(), song.getFilePath(), song.getFileEtag());
+        StoredFile cover = resolveCoverArt(song.getCoverArtPath(), song.getCoverArtEtag());
+        if (cover != null) {
+            coverArtBySongId.put(song.getId(), cover);
+        }
+        return audio;
+    }
+
+    /**
+     * Indexes the audio file of a song from its stored columns
+     * @return The resolved file, or null if it does not exist
+     */
+    public StoredFile register(Long songId, String filePath, String fileEtag) {
+        StoredFile audio = resolveSong(filePath, fileEtag);
+        if (audio != null) {
+            songsById.put(songId, audio);
+        }
+        return audio;
+    }
+
+    /**
+     * Indexes an album cover and all of its songs
+     */
+    public void register(Album album) {
+        resolveCoverArt(album.getCoverArtPath(), album.getCoverArtEtag());
+        for (Song song : album.getSongs()) {
+            register(song);
+        }
+    }
+
+    /**
+     * Drops a deleted song from the index
+     */
+    public void remove(Song song) {
+        songsById.remove(song.getId());
+        coverArtBySongId.remove(song.getId());
+        if (song.getFilePath() != null) {
+            songsByFilename.remove(extractFilename(song.getFilePath()));
+        }
+    }
+
+    /**
+     * Drops a deleted album, its cover art and its songs from the index
+     */
+    public void remove(Album album) {
+        for (Song song : album.getSongs()) {
+            remove(song);
+        }
+        if (album.getCoverArtPath() != null) {
+            coverArtByFilename.remove(extractFilename(album.getCoverArtPath()));
+        }
+    }
+
+    private StoredFile resolveSong(String storedPath, String etag) {
+        return resolve(storedPath, etag, songsDir, songsByFilename);
+    }
+
+    private StoredFile resolveCoverArt(String storedPath, String etag) {
+        return resolve(storedPath, etag, coverArtDir, coverArtByFilename);
+    }
+
+    /**
+     * Resolves a path as stored in the database (a filename, or a full path for old rows),
+     * attaching the persisted validator to the filename entry
+     */
+    private StoredFile resolve(String storedPath, String etag, String directory, Map<String, StoredFile> byFilename) {
+        if (storedPath == null || storedPath.isEmpty()) {
+            return null;
+        }
+        String filename = extractFilename(storedPath);
+        StoredFile file = byFilename.get(filename);
+        if (file == null) {
+            file = StoredFile.of(new File(directory, filename), etag);
+            if (file == null && !storedPath.equals(filename)) {
+                // Old rows stored the full path
+                file = StoredFile.of(new File(storedPath), etag);
+            }
+            if (file == null) {
+                return null;
+            }
+        }
+        file = file.withEtag(etag);
+        byFilename.put(filename, file);
+        return file;
+    }
+
+    private void scanDirectory(Path directory, Map<String, StoredFile> byFilename) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    continue;
+                }
+                StoredFile file = StoredFile.of(path.toFile(), null);
+                if (file != null) {
+                    byFilename.putIfAbsent(name, file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not scan upload directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Only bare filenames are resolved on a miss, so request paths can never escape the upload directories
+     */
+    private boolean isPlainFilename(String filename) {
+        return !filename.contains("/") && !filename.contains("\\") && !filename.equals("..") && !filename.equals(".");
+    }
+
+    private String extractFilename(String path) {
+        String normalized = path.replace("\\", "/");
+        int lastSlash = normalized.lastIndexOf("/");
+        if (lastSlash >= 0 && lastSlash < normalized.length() - 1) {
+            return normalized.substring(lastSlash + 1);
+        }
+        return path;
+    }
+}
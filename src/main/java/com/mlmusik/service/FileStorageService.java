@@ -1,15 +1,21 @@
 package com.mlmusik.service;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.UUID;
 
 @Service
@@ -24,6 +30,10 @@ public class FileStorageService {
     @Value("${file.upload.songs-dir}")
     private String songsDir;
 
+    @Value("${file.import-dir:./uploads/import}")
+    private String importDir;
+
+    @PostConstruct
     public void initDirectories() {
         try {
             Files.createDirectories(Paths.get(uploadDir));
@@ -34,30 +44,41 @@ public class FileStorageService {
         }
     }
 
-    public String storeCoverArt(MultipartFile file) throws IOException {
-        initDirectories();
-        String originalFilename = file.getOriginalFilename();
-        String extension = originalFilename != null && originalFilename.contains(".") 
-            ? originalFilename.substring(originalFilename.lastIndexOf(".")) 
-            : ".jpg";
-        String filename = UUID.randomUUID().toString() + extension;
-        Path targetLocation = Paths.get(coverArtDir).resolve(filename);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-        // Return only the filename for consistent storage in database
-        return filename;
+    /**
+     * Copies a cover art file from the import directory into storage
+     * @return The stored filename
+     */
+    public String storeCoverArt(Path source) throws IOException {
+        return copyInto(Paths.get(coverArtDir), source, ".jpg");
     }
 
-    public String storeSong(MultipartFile file) throws IOException {
+    /**
+     * Picks the stored filename of a new song, keeping the extension of the original. The file
+     * itself is written by the caller (see MP3MetadataService#writeTagged).
+     */
+    public String newSongFilename(String originalFilename) {
         initDirectories();
-        String originalFilename = file.getOriginalFilename();
-        String extension = originalFilename != null && originalFilename.contains(".") 
-            ? originalFilename.substring(originalFilename.lastIndexOf(".")) 
+        originalFilename = extractFilename(originalFilename);
+        String extension = originalFilename != null && originalFilename.contains(".")
+            ? originalFilename.substring(originalFilename.lastIndexOf("."))
             : ".mp3";
-        String filename = UUID.randomUUID().toString() + extension;
-        Path targetLocation = Paths.get(songsDir).resolve(filename);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-        // Return only the filename for consistent storage in database
-        return filename;
+        return UUID.randomUUID().toString() + extension;
+    }
+
+    /**
+     * Resolves a path of a bulk import manifest against the import directory
+     * @throws IOException if the path leaves the import directory or is not a regular file
+     */
+    public Path resolveImportFile(String relativePath) throws IOException {
+        if (relativePath == null || relativePath.isEmpty()) {
+            throw new IOException("Missing import file path");
+        }
+        Path root = Paths.get(importDir).toAbsolutePath().normalize();
+        Path file = root.resolve(relativePath).normalize();
+        if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+            throw new IOException("Import file not found: " + relativePath);
+        }
+        return file;
     }
 
     public File getFile(String filePath) {
@@ -112,9 +133,7 @@ public class FileStorageService {
         if (filename.contains("/") || filename.contains("\\")) {
             return filename;
         }
-        // Otherwise, construct the full path
-        // Ensure directory exists
-        initDirectories();
+        // Otherwise, construct the full path (directories are created at startup)
         Path fullPath = Paths.get(songsDir).resolve(filename);
         // Convert to absolute path
         File file = fullPath.toFile();
@@ -141,6 +160,66 @@ public class FileStorageService {
         return Paths.get(coverArtDir).resolve(filename).toString();
     }
 
+    /**
+     * Computes the strong validator (ETag value) for a stored file: the hex SHA-256 of its content.
+     * Called once at ingest, after tagging, and persisted with the song or album.
+     * @param fullPath Full path to the file
+     * @return Hex digest, or null if the file cannot be read
+     */
+    public String computeContentDigest(String fullPath) {
+        if (fullPath == null) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(fullPath), StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a stored song file (e.g. after a failed ingest); missing files are ignored
+     */
+    public void deleteSong(String filename) {
+        deleteQuietly(songsDir, filename);
+    }
+
+    /**
+     * Deletes a stored cover art file; missing files are ignored
+     */
+    public void deleteCoverArt(String filename) {
+        deleteQuietly(coverArtDir, filename);
+    }
+
+    private void deleteQuietly(String directory, String filename) {
+        if (filename == null || filename.isEmpty()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(directory).resolve(extractFilename(filename)));
+        } catch (IOException e) {
+            System.err.println("Could not delete " + filename + ": " + e.getMessage());
+        }
+    }
+
+    private String copyInto(Path directory, Path source, String defaultExtension) throws IOException {
+        initDirectories();
+        String originalFilename = source.getFileName().toString();
+        String extension = originalFilename.contains(".")
+            ? originalFilename.substring(originalFilename.lastIndexOf("."))
+            : defaultExtension;
+        String filename = UUID.randomUUID().toString() + extension;
+        Files.copy(source, directory.resolve(filename), StandardCopyOption.REPLACE_EXISTING);
+        return filename;
+    }
+
     /**
      * Extract filename from a path, handling both Windows and Unix paths
      */
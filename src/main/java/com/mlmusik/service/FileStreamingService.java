@@ -0,0 +1,440 @@
+package com.mlmusik.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Serves song files (full and partial responses) and answers conditional requests for songs and
+ * cover art from validators stored at ingest.
+ *
+ * Every single-region response that is not shaped (all playback, and downloads unless shaping is
+ * enabled) is handed to the connector's sendfile support (Tomcat NIO/NIO2), so the kernel copies
+ * straight from the page cache to the socket and no request thread stays busy. Only what sendfile
+ * cannot do is written by the application on an async thread, copied through a heap buffer:
+ * multipart/byteranges, shaped downloads (paced by the {@link StreamScheduler}), regions served
+ * from the hot segment cache (with sendfile, only those that lie within a cached head, such as
+ * a player's start-up probes) and containers without sendfile.
+ */
+@Service
+public class FileStreamingService {
+
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final String SEEK_TIME_HEADER = "X-Seek-Time";
+
+    private static final MediaType AUDIO_MPEG = MediaType.parseMediaType("audio/mpeg");
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private HotSegmentCache hotSegmentCache;
+
+    @Autowired
+    private StreamScheduler streamScheduler;
+
+    @Value("${streaming.sendfile.enabled:true}")
+    private boolean sendfileEnabled;
+
+    /**
+     * Builds the response for a song file, honouring conditional and Range headers.
+     * If-None-Match / If-Modified-Since yield 304; If-Range that does not match the current
+     * validator turns a ranged request into a full 200. A single range is served as 206, several
+     * ranges as 206 multipart/byteranges, a range that lies entirely past the end of the file as
+     * 416, and a malformed Range header is ignored (200).
+     * Served in the playback class, whatever the request looks like: the endpoint decides.
+     * @param song The resolved song file
+     * @param request The current request; also used to hand the transfer to the connector
+     * @return Full (200), partial (206), not modified (304) or unsatisfiable (416) response
+     */
+    public ResponseEntity<StreamingResponseBody> streamSong(StoredFile song, HttpServletRequest request) {
+        return stream(song, StreamPriority.PLAYBACK, null, null, request);
+    }
+
+    /**
+     * Builds the response for a time-based seek (?t=seconds): a 206 from the first byte of the
+     * frame playing at that time to the end of the file, so any MP3 decoder can start there.
+     * The Range header is ignored; the frame's exact start time is returned in X-Seek-Time.
+     * @param song The resolved song file
+     * @param seek Frame-aligned position from the seek index, or null if the time is past the end
+     * @param request The current request
+     * @return Partial (206), not modified (304) or unsatisfiable (416) response
+     */
+    public ResponseEntity<StreamingResponseBody> streamSongFrom(StoredFile song, SeekIndex.Position seek,
+                                                                HttpServletRequest request) {
+        if (seek == null) {
+            return stream(song, StreamPriority.PLAYBACK, null, List.of(), request);
+        }
+        List<ByteRange> range = seek.getOffset() < song.getLength()
+                ? List.of(new ByteRange(seek.getOffset(), song.getLength() - 1))
+                : List.of();
+        ResponseEntity<StreamingResponseBody> response = stream(song, StreamPriority.PLAYBACK, null, range, request);
+        if (response.getStatusCode() != HttpStatus.PARTIAL_CONTENT) {
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(SEEK_TIME_HEADER, String.format(Locale.ROOT, "%.3f", seek.getTime()))
+                .body(response.getBody());
+    }
+
+    /**
+     * Builds an attachment response for a song download, served in the download class
+     * (paced when shaping is enabled).
+     * Supports the same conditional and Range handling as playback, so downloads can resume.
+     * @param song The resolved song file
+     * @param filename Filename suggested to the client
+     * @param request The current request
+     */
+    public ResponseEntity<StreamingResponseBody> download(StoredFile song, String filename,
+                                                          HttpServletRequest request) {
+        return stream(song, StreamPriority.DOWNLOAD, "attachment; filename=\"" + filename + "\"", null, request);
+    }
+
+    /**
+     * @param seekRanges Ranges resolved from a seek request, replacing the Range header; null for none
+     */
+    private ResponseEntity<StreamingResponseBody> stream(StoredFile song, StreamPriority priority,
+                                                         String contentDisposition, List<ByteRange> seekRanges,
+                                                         HttpServletRequest request) {
+        long fileLength = song.getLength();
+        long lastModified = song.getLastModified();
+        String etag = toEtag(song.getEtag(), fileLength, lastModified);
+
+        if (isNotModified(request, etag, lastModified)) {
+            return withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), etag, lastModified)
+                    .header(HttpHeaders.CACHE_CONTROL, "public, max-age=3600")
+                    .build();
+        }
+
+        List<ByteRange> ranges = seekRanges;
+        if (ranges == null) {
+            String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+            if (rangeHeader != null && !isIfRangeSatisfied(request.getHeader(HttpHeaders.IF_RANGE), etag, lastModified)) {
+                // Representation changed since the client's partial copy: send it whole
+                rangeHeader = null;
+            }
+            ranges = ByteRange.parse(rangeHeader, fileLength);
+        }
+
+        if (ranges == null) {
+            // Full file response (no usable range request)
+            return songHeaders(ResponseEntity.ok(), etag, lastModified, contentDisposition)
+                    .contentType(AUDIO_MPEG)
+                    .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(fileLength))
+                    .body(transfer(song, 0, fileLength, priority, request));
+        }
+
+        if (ranges.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength)
+                    .build();
+        }
+
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            return songHeaders(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), etag, lastModified, contentDisposition)
+                    .contentType(AUDIO_MPEG)
+                    .header(HttpHeaders.CONTENT_RANGE, range.toContentRange(fileLength))
+                    .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(range.getLength()))
+                    .body(transfer(song, range.getStart(), range.getLength(), priority, request));
+        }
+
+        // Several ranges: one multipart/byteranges body, each part written like a single region
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (ByteRange range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + AUDIO_MPEG + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + range.toContentRange(fileLength) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range.getLength();
+        }
+        byte[] closeDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closeDelimiter.length;
+
+        List<ByteRange> parts = ranges;
+        StreamingResponseBody body = outputStream -> {
+            for (int i = 0; i < parts.size(); i++) {
+                ByteRange range = parts.get(i);
+                outputStream.write(partHeaders.get(i));
+                recordPlayback(priority, range.getLength());
+                writeRegion(song, range.getStart(), range.getLength(), priority, outputStream);
+            }
+            outputStream.write(closeDelimiter);
+        };
+
+        if (!isHead(request)) {
+            markShaped(priority, request);
+        }
+        return songHeaders(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), etag, lastModified, contentDisposition)
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(contentLength))
+                .body(isHead(request) ? null : body);
+    }
+
+    /**
+     * Builds the response for a cover art image, answering 304 when the client's copy is current.
+     * @param image The resolved image file
+     * @param contentType Image MIME type
+     * @param request The current request
+     * @return Full (200) or not modified (304) response
+     */
+    public ResponseEntity<Resource> serveImage(StoredFile image, String contentType, HttpServletRequest request) {
+        return serveFile(image, contentType, "public, max-age=31536000", request);
+    }
+
+    /**
+     * Builds the response for a file that never changes once written (HLS playlists and
+     * segments), cacheable by browsers and CDNs without revalidation.
+     * @param file The resolved file
+     * @param contentType MIME type
+     * @param request The current request
+     * @return Full (200) or not modified (304) response
+     */
+    public ResponseEntity<Resource> serveImmutable(StoredFile file, String contentType, HttpServletRequest request) {
+        return serveFile(file, contentType, "public, max-age=31536000, immutable", request);
+    }
+
+    private ResponseEntity<Resource> serveFile(StoredFile file, String contentType, String cacheControl,
+                                               HttpServletRequest request) {
+        long lastModified = file.getLastModified();
+        String etag = toEtag(file.getEtag(), file.getLength(), lastModified);
+
+        if (isNotModified(request, etag, lastModified)) {
+            return withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), etag, lastModified)
+                    .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                    .build();
+        }
+        return withValidators(ResponseEntity.ok(), etag, lastModified)
+                .contentType(MediaType.parseMediaType(contentType))
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                .body(new FileSystemResource(file.getFile()));
+    }
+
+    private ResponseEntity.BodyBuilder songHeaders(ResponseEntity.BodyBuilder builder, String etag, long lastModified,
+                                                   String contentDisposition) {
+        withValidators(builder, etag, lastModified)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CACHE_CONTROL, "public, max-age=3600")
+                .header(HttpHeaders.CONNECTION, "keep-alive");
+        if (contentDisposition != null) {
+            builder.header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        }
+        return builder;
+    }
+
+    private ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder builder, String etag, long lastModified) {
+        builder.eTag(etag);
+        if (lastModified > 0) {
+            builder.lastModified(lastModified);
+        }
+        return builder;
+    }
+
+    /**
+     * Quoted strong ETag. Uploaded files are never rewritten in place (every upload gets a new
+     * UUID name), so size+mtime is a safe fallback for rows ingested before digests were stored.
+     */
+    private String toEtag(String storedEtag, long length, long lastModified) {
+        if (storedEtag != null && !storedEtag.isEmpty()) {
+            return "\"" + storedEtag + "\"";
+        }
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * Evaluates If-None-Match (weak comparison) and, when absent, If-Modified-Since
+     */
+    private boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || stripWeak(tag).equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = parseDate(request.getHeader(HttpHeaders.IF_MODIFIED_SINCE));
+        // HTTP dates have one-second resolution
+        return ifModifiedSince >= 0 && lastModified > 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range matches only on a strong ETag comparison or an exact Last-Modified date
+     */
+    private boolean isIfRangeSatisfied(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return value.equals(etag);
+        }
+        long date = parseDate(value);
+        return date >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    private String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private long parseDate(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the body for a byte region of a song. The hot segment cache is consulted first for
+     * regions that start in the head, which also counts the request toward admission. A cached
+     * head answers a region that lies entirely inside it; with sendfile available, a longer
+     * region goes to the connector's sendfile instead (the body is then null and the connector
+     * writes the region after the headers are committed), since serving its head from memory
+     * would turn the rest into a heap copy. Without sendfile, regions that start in a cached head
+     * are written from off-heap memory, and shaped regions are paced by the stream scheduler.
+     */
+    private StreamingResponseBody transfer(StoredFile song, long position, long count, StreamPriority priority,
+                                           HttpServletRequest request) {
+        if (isHead(request)) {
+            // Headers only; the connector would otherwise send the file for HEAD as well
+            return null;
+        }
+        recordPlayback(priority, count);
+        boolean sendfile = count > 0 && !streamScheduler.isShaped(priority) && isSendfileSupported(request);
+        ByteBuffer head = count > 0 && hotSegmentCache.covers(position) ? hotSegmentCache.lookup(song) : null;
+        if (head != null && position < head.limit() && (!sendfile || position + count <= head.limit())) {
+            if (position + count > head.limit()) {
+                markShaped(priority, request);
+            }
+            return outputStream -> writeFromCache(head, song, position, count, priority, outputStream);
+        }
+        if (sendfile) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, song.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTR, position);
+            request.setAttribute(SENDFILE_END_ATTR, position + count);
+            return null;
+        }
+        markShaped(priority, request);
+        return outputStream -> writeRegion(song, position, count, priority, outputStream);
+    }
+
+    /**
+     * Writes the cached part of a region from the head segment and the rest from the file.
+     * The head goes out unpaced: it is the burst a player needs to start.
+     */
+    private void writeFromCache(ByteBuffer head, StoredFile song, long position, long count, StreamPriority priority,
+                                OutputStream outputStream) throws IOException {
+        long headEnd = Math.min(head.limit(), position + count);
+        head.limit((int) headEnd).position((int) position);
+        // The servlet output stream only takes arrays, so the off-heap bytes are copied in chunks
+        byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, headEnd - position)];
+        while (head.hasRemaining()) {
+            int length = Math.min(buffer.length, head.remaining());
+            head.get(buffer, 0, length);
+            outputStream.write(buffer, 0, length);
+        }
+        hotSegmentCache.recordServed(headEnd - position);
+        long remaining = position + count - headEnd;
+        if (remaining > 0) {
+            writeRegion(song, headEnd, remaining, priority, outputStream);
+        }
+    }
+
+    /**
+     * Writes a region from the file, through the stream scheduler when its class is shaped
+     */
+    private void writeRegion(StoredFile song, long position, long count, StreamPriority priority,
+                             OutputStream outputStream) throws IOException {
+        if (streamScheduler.isShaped(priority)) {
+            streamScheduler.transfer(song, position, count, outputStream);
+        } else {
+            transferTo(song.getFile(), position, count, outputStream);
+        }
+    }
+
+    /**
+     * Marks the request so its body runs on the stream scheduler's download pool (see AsyncConfig)
+     */
+    private void markShaped(StreamPriority priority, HttpServletRequest request) {
+        if (streamScheduler.isShaped(priority) && request != null) {
+            request.setAttribute(StreamScheduler.SHAPED_ATTRIBUTE, Boolean.TRUE);
+        }
+    }
+
+    private void recordPlayback(StreamPriority priority, long bytes) {
+        if (priority == StreamPriority.PLAYBACK && bytes > 0) {
+            streamScheduler.recordPlayback(bytes);
+        }
+    }
+
+    private boolean isHead(HttpServletRequest request) {
+        return request != null && "HEAD".equals(request.getMethod());
+    }
+
+    private boolean isSendfileSupported(HttpServletRequest request) {
+        return sendfileEnabled && request != null
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR));
+    }
+
+    /**
+     * Copies a region of a file to the response through a heap buffer; used only where
+     * sendfile is not possible
+     */
+    static void transferTo(File file, long position, long count, OutputStream outputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, Math.max(count, 1))];
+            long end = position + count;
+            while (position < end) {
+                int read = channel.read(ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position)),
+                        position);
+                if (read <= 0) {
+                    // File was truncated underneath us
+                    break;
+                }
+                outputStream.write(buffer, 0, read);
+                position += read;
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.mlmusik.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Packages stored songs for HLS: each MP3 is cut on frame boundaries into segments of about
+ * {@code streaming.hls.segment-seconds} and described by a VOD playlist, under
+ * "<hls-dir>/<song name>/". Segments are packed audio (raw MPEG frames) prefixed with the ID3
+ * timestamp HLS requires, so no re-encoding is involved and every file is immutable: each one
+ * is written to a temporary file and moved into place atomically, so a reader never sees a
+ * partial segment. Concurrent requests for a song that is not packaged yet share one run.
+ */
+@Service
+public class HlsService {
+
+    public static final String PLAYLIST_NAME = "playlist.m3u8";
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment\\d{5}\\.mp3");
+
+    private static final byte[] TIMESTAMP_OWNER =
+            "com.apple.streaming.transportStreamTimestamp".getBytes(StandardCharsets.ISO_8859_1);
+
+    @Autowired
+    private SeekIndexService seekIndexService;
+
+    @Value("${file.upload.hls-dir:./uploads/hls}")
+    private String hlsDir;
+
+    @Value("${streaming.hls.segment-seconds:6}")
+    private int segmentSeconds;
+
+    // Packaging runs in progress per song filename, joined by concurrent playlist requests
+    private final Map<String, CompletableFuture<StoredFile>> packaging = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initDirectory() {
+        try {
+            Files.createDirectories(Paths.get(hlsDir));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create HLS directory!", e);
+        }
+    }
+
+    /**
+     * Cuts a stored MP3 into segments and writes its playlist. The playlist is written last,
+     * so its presence means the package is complete.
+     * @param mp3FullPath Full path of the stored (already tagged) song
+     * @return The playlist, or null if the file has no audio frames or could not be packaged
+     */
+    public StoredFile segment(String mp3FullPath) {
+        StoredFile song = StoredFile.of(new File(mp3FullPath), null);
+        if (song == null) {
+            return null;
+        }
+        SeekIndex index = seekIndexService.get(song);
+        if (index == null || index.size() == 0) {
+            return null;
+        }
+        Path directory = packageDirectory(song.getName());
+        try {
+            Files.createDirectories(directory);
+            StringBuilder playlist = new StringBuilder();
+            int targetDuration = 0;
+            int segmentCount = (index.size() + segmentSeconds - 1) / segmentSeconds;
+            try (FileChannel source = FileChannel.open(song.getFile().toPath(), StandardOpenOption.READ)) {
+                for (int i = 0; i < segmentCount; i++) {
+                    int first = i * segmentSeconds;
+                    int next = first + segmentSeconds;
+                    long start = index.getOffset(first);
+                    long end = next < index.size() ? index.getOffset(next) : index.getAudioEnd();
+                    int startFrame = index.getFrame(first);
+                    int endFrame = next < index.size() ? index.getFrame(next) : index.getTotalFrames();
+                    if (end <= start) {
+                        continue;
+                    }
+                    double startTime = index.getFrameTime(startFrame);
+                    double duration = index.getFrameTime(endFrame) - startTime;
+                    String name = String.format(Locale.ROOT, "segment%05d.mp3", i);
+                    writeSegment(source, start, end - start, startTime, directory.resolve(name));
+                    targetDuration = Math.max(targetDuration, (int) Math.ceil(duration));
+                    playlist.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", duration)).append(name).append('\n');
+                }
+            }
+            String header = "#EXTM3U\n"
+                    + "#EXT-X-VERSION:3\n"
+                    + "#EXT-X-PLAYLIST-TYPE:VOD\n"
+                    + "#EXT-X-TARGETDURATION:" + targetDuration + "\n"
+                    + "#EXT-X-MEDIA-SEQUENCE:0\n";
+            Path target = directory.resolve(PLAYLIST_NAME);
+            Path temp = Files.createTempFile(directory, PLAYLIST_NAME + ".", ".tmp");
+            try {
+                Files.writeString(temp, header + playlist + "#EXT-X-ENDLIST\n", StandardCharsets.UTF_8);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return StoredFile.of(target.toFile(), null);
+        } catch (IOException e) {
+            System.err.println("Could not segment " + song.getName() + " for HLS: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Playlist of a song, packaging the song first if that has not happened yet
+     * @param song The resolved song file
+     */
+    public StoredFile getPlaylist(StoredFile song) {
+        StoredFile playlist = currentPlaylist(song);
+        if (playlist != null) {
+            return playlist;
+        }
+        CompletableFuture<StoredFile> pending = new CompletableFuture<>();
+        CompletableFuture<StoredFile> existing = packaging.putIfAbsent(song.getName(), pending);
+        if (existing != null) {
+            return existing.join();
+        }
+        StoredFile packaged = null;
+        try {
+            // Another run may have finished between the first check and claiming this one
+            packaged = currentPlaylist(song);
+            if (packaged == null) {
+                packaged = segment(song.getFile().getPath());
+            }
+            return packaged;
+        } finally {
+            // Waiters get null (not found) if packaging threw
+            packaging.remove(song.getName(), pending);
+            pending.complete(packaged);
+        }
+    }
+
+    /**
+     * A segment of a packaged song
+     * @param songFilename Stored filename of the song (e.g. "uuid.mp3")
+     * @param segmentName Segment name as listed in the playlist
+     * @return The segment, or null if the name is not a segment or it does not exist
+     */
+    public StoredFile getSegment(String songFilename, String segmentName) {
+        if (!SEGMENT_NAME.matcher(segmentName).matches()) {
+            return null;
+        }
+        return StoredFile.of(packageDirectory(songFilename).resolve(segmentName).toFile(), null);
+    }
+
+    /**
+     * Deletes the HLS package of a deleted song
+     */
+    public void remove(String songFilename) {
+        Path directory = packageDirectory(songFilename);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.err.println("Could not delete HLS package for " + songFilename + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The song's playlist if it exists and is not older than the song
+     */
+    private StoredFile currentPlaylist(StoredFile song) {
+        StoredFile playlist = StoredFile.of(packageDirectory(song.getName()).resolve(PLAYLIST_NAME).toFile(), null);
+        return playlist != null && playlist.getLastModified() >= song.getLastModified() ? playlist : null;
+    }
+
+    private Path packageDirectory(String songFilename) {
+        int dot = songFilename.lastIndexOf('.');
+        return Paths.get(hlsDir, dot > 0 ? songFilename.substring(0, dot) : songFilename);
+    }
+
+    /**
+     * Writes the timestamp tag followed by the raw frames in [start, start + count) to a temporary
+     * file, then moves it over the target
+     */
+    private void writeSegment(FileChannel source, long start, long count, double startTime, Path target)
+            throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+        try {
+            copySegment(source, start, count, startTime, temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void copySegment(FileChannel source, long start, long count, double startTime, Path target)
+            throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer tag = timestampTag(Math.round(startTime * 90000));
+            while (tag.hasRemaining()) {
+                out.write(tag);
+            }
+            long position = start;
+            long end = start + count;
+            while (position < end) {
+                long written = source.transferTo(position, end - position, out);
+                if (written <= 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                position += written;
+            }
+        }
+    }
+
+    /**
+     * ID3v2.4 tag with the PRIV frame that carries a packed audio segment's 33-bit MPEG-2 PTS
+     * (90 kHz clock), as required by the HLS specification
+     */
+    private static ByteBuffer timestampTag(long pts) {
+        int frameSize = TIMESTAMP_OWNER.length + 1 + 8;
+        int tagSize = 10 + frameSize;
+        ByteBuffer tag = ByteBuffer.allocate(10 + tagSize);
+        tag.put((byte) 'I').put((byte) 'D').put((byte) '3').put((byte) 4).put((byte) 0).put((byte) 0);
+        tag.putInt(syncsafe(tagSize));
+        tag.put((byte) 'P').put((byte) 'R').put((byte) 'I').put((byte) 'V');
+        tag.putInt(syncsafe(frameSize));
+        tag.putShort((short) 0);
+        tag.put(TIMESTAMP_OWNER).put((byte) 0);
+        tag.putLong(pts & 0x1FFFFFFFFL);
+        tag.flip();
+        return tag;
+    }
+
+    private static int syncsafe(int value) {
+        return ((value & 0xFE00000) << 3) | ((value & 0x1FC000) << 2) | ((value & 0x3F80) << 1) | (value & 0x7F);
+    }
+}
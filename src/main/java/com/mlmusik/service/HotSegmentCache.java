@@ -0,0 +1,374 @@
+package com.mlmusik.service;
+
+import com.mlmusik.model.Song;
+import com.mlmusik.repository.SongRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Off-heap cache of the first bytes (head segment) of the most played songs.
+ *
+ * Players fetch the head of a file while they start, so keeping those bytes in direct buffers
+ * keeps first-byte latency flat even when the uploads volume is on slow disk. Songs are admitted
+ * by frequency (seeded from the views counter, fed by live requests and halved periodically) and
+ * the least frequently used entry is evicted once the memory budget is reached.
+ *
+ * A miss never reads the file on the request thread: admission is queued to a background loader
+ * and the request is served from disk. Each admission holds a ticket that invalidation revokes,
+ * and the file is checked against the length and modification time it was read with, so a
+ * segment of a deleted or replaced file is never published.
+ */
+@Service
+public class HotSegmentCache {
+
+    @Autowired
+    private SongRepository songRepository;
+
+    @Autowired
+    private FilePathIndex filePathIndex;
+
+    @Value("${streaming.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${streaming.cache.segment-size:524288}")
+    private int segmentSize;
+
+    @Value("${streaming.cache.max-memory:134217728}")
+    private long maxMemory;
+
+    @Value("${streaming.cache.admission-threshold:3}")
+    private long admissionThreshold;
+
+    @Value("${streaming.cache.warm-count:100}")
+    private int warmCount;
+
+    @Value("${streaming.cache.admission-queue:64}")
+    private int admissionQueue;
+
+    private final Map<String, Segment> segments = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> frequencies = new ConcurrentHashMap<>();
+    // Ticket of each admission in progress; invalidate() removes it so the admission is not published
+    private final Map<String, Object> loading = new ConcurrentHashMap<>();
+    private volatile long usedBytes;
+    private ExecutorService loader;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder skippedAdmissions = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        // One loader with a short queue: when it falls behind, admissions are skipped, not queued up
+        loader = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(admissionQueue),
+                task -> {
+                    Thread thread = new Thread(task, "hot-segment-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        loader.shutdownNow();
+    }
+
+    /**
+     * Preloads the head segments of the most viewed songs
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(10)
+    public void warm() {
+        if (!enabled || warmCount <= 0) {
+            return;
+        }
+        int loaded = 0;
+        PageRequest top = PageRequest.of(0, warmCount, Sort.by(Sort.Direction.DESC, "views"));
+        for (Song song : songRepository.findAll(top)) {
+            StoredFile file = filePathIndex.getSongById(song.getId());
+            if (file == null) {
+                continue;
+            }
+            long views = song.getViews() != null ? song.getViews() : 0;
+            frequency(file.getName()).accumulateAndGet(Math.max(views, admissionThreshold), Math::max);
+            if (admit(file) != null) {
+                loaded++;
+            }
+        }
+        System.out.println("Hot segment cache warmed with " + loaded + " songs (" + usedBytes + " bytes)");
+    }
+
+    /**
+     * Returns the cached head segment of a file, counting the request toward the file's frequency.
+     * On a miss the segment is queued for loading in the background if the file has become hot
+     * enough to displace a colder one; this request is served from the file.
+     * @param file The resolved song file
+     * @return A read-only view positioned at 0, or null if the file is not cached
+     */
+    public ByteBuffer lookup(StoredFile file) {
+        if (!enabled) {
+            return null;
+        }
+        String key = file.getName();
+        long frequency = frequency(key).incrementAndGet();
+        Segment segment = segments.get(key);
+        if (segment != null && segment.matches(file)) {
+            hits.increment();
+            segment.lastAccess = System.nanoTime();
+            return segment.buffer.duplicate();
+        }
+        misses.increment();
+        if (frequency >= admissionThreshold) {
+            admitLater(file);
+        }
+        return null;
+    }
+
+    /**
+     * Whether a request starting at this offset can be answered from a head segment
+     */
+    public boolean covers(long position) {
+        return enabled && position < segmentSize;
+    }
+
+    /**
+     * Records bytes written to clients straight from the cache
+     */
+    public void recordServed(long bytes) {
+        bytesServed.add(bytes);
+    }
+
+    /**
+     * Drops a file from the cache (e.g. after the song was deleted)
+     */
+    public void invalidate(String filename) {
+        frequencies.remove(filename);
+        synchronized (this) {
+            loading.remove(filename);
+            Segment removed = segments.remove(filename);
+            if (removed != null) {
+                usedBytes -= removed.buffer.capacity();
+            }
+        }
+    }
+
+    /**
+     * Halves every frequency so that songs that were hot last week do not stay cached forever
+     */
+    @Scheduled(fixedDelayString = "${streaming.cache.decay-interval-ms:600000}")
+    public void decay() {
+        frequencies.entrySet().removeIf(entry -> entry.getValue().updateAndGet(value -> value >> 1) == 0
+                && !segments.containsKey(entry.getKey()));
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", segments.size());
+        stats.put("usedBytes", usedBytes);
+        stats.put("maxBytes", maxMemory);
+        stats.put("segmentSize", segmentSize);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.sum());
+        stats.put("skippedAdmissions", skippedAdmissions.sum());
+        stats.put("bytesServed", bytesServed.sum());
+        return stats;
+    }
+
+    private AtomicLong frequency(String key) {
+        return frequencies.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    /**
+     * Queues the admission of a file unless one is already in progress or the loader is full
+     */
+    private void admitLater(StoredFile file) {
+        Object ticket = claim(file);
+        if (ticket == null) {
+            return;
+        }
+        try {
+            loader.execute(() -> load(file, ticket));
+        } catch (RejectedExecutionException e) {
+            loading.remove(file.getName(), ticket);
+            skippedAdmissions.increment();
+        }
+    }
+
+    private Segment admit(StoredFile file) {
+        Object ticket = claim(file);
+        return ticket != null ? load(file, ticket) : null;
+    }
+
+    /**
+     * Registers an admission of the file
+     * @return Its ticket, or null if the file does not fit or is already being admitted
+     */
+    private Object claim(StoredFile file) {
+        long size = Math.min(segmentSize, file.getLength());
+        Object ticket = new Object();
+        if (size <= 0 || size > maxMemory || loading.putIfAbsent(file.getName(), ticket) != null) {
+            return null;
+        }
+        return ticket;
+    }
+
+    /**
+     * Loads the head segment of a file and inserts it, evicting colder entries to stay in budget
+     */
+    private Segment load(StoredFile file, Object ticket) {
+        String key = file.getName();
+        int size = (int) Math.min(segmentSize, file.getLength());
+        try {
+            // Invalidated while queued
+            if (loading.get(key) != ticket || !makeRoom(size, frequency(key).get())) {
+                return null;
+            }
+            Segment segment;
+            try {
+                segment = new Segment(read(file, size), file.getLength(), file.getLastModified());
+            } catch (IOException e) {
+                release(size);
+                return null;
+            }
+            // The file may have been replaced while it was read
+            File current = file.getFile();
+            boolean unchanged = current.length() == segment.fileLength && current.lastModified() == segment.lastModified;
+            synchronized (this) {
+                if (!unchanged || loading.get(key) != ticket) {
+                    usedBytes -= size;
+                    return null;
+                }
+                Segment previous = segments.put(key, segment);
+                if (previous != null) {
+                    usedBytes -= previous.buffer.capacity();
+                }
+            }
+            return segment;
+        } finally {
+            loading.remove(key, ticket);
+        }
+    }
+
+    private synchronized void release(long size) {
+        usedBytes -= size;
+    }
+
+    /**
+     * Reserves size bytes, evicting least frequently (then least recently) used entries when the
+     * budget is full. Gives up without evicting anything if that would mean dropping a hotter entry.
+     * Candidates are ranked once, outside the lock; under the lock only those still cached count.
+     */
+    private boolean makeRoom(long size, long frequency) {
+        List<Victim> candidates = new ArrayList<>();
+        if (usedBytes + size > maxMemory) {
+            for (Map.Entry<String, Segment> entry : segments.entrySet()) {
+                AtomicLong counter = frequencies.get(entry.getKey());
+                long entryFrequency = counter != null ? counter.get() : 0;
+                if (entryFrequency < frequency) {
+                    candidates.add(new Victim(entry.getKey(), entry.getValue(), entryFrequency));
+                }
+            }
+            candidates.sort(Comparator.comparingLong((Victim victim) -> victim.frequency)
+                    .thenComparingLong(victim -> victim.segment.lastAccess));
+        }
+        synchronized (this) {
+            long needed = usedBytes + size - maxMemory;
+            int victimCount = 0;
+            long freed = 0;
+            while (freed < needed && victimCount < candidates.size()) {
+                Victim victim = candidates.get(victimCount++);
+                if (segments.get(victim.key) == victim.segment) {
+                    freed += victim.segment.buffer.capacity();
+                }
+            }
+            if (freed < needed) {
+                return false;
+            }
+            for (Victim victim : candidates.subList(0, victimCount)) {
+                if (segments.remove(victim.key, victim.segment)) {
+                    usedBytes -= victim.segment.buffer.capacity();
+                    evictions.increment();
+                }
+            }
+            // Reserve the space before reading so concurrent admissions respect the budget
+            usedBytes += size;
+            return true;
+        }
+    }
+
+    private ByteBuffer read(StoredFile file, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        try (FileChannel channel = FileChannel.open(file.getFile().toPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file: " + file.getFile());
+                }
+            }
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static final class Victim {
+        private final String key;
+        private final Segment segment;
+        private final long frequency;
+
+        private Victim(String key, Segment segment, long frequency) {
+            this.key = key;
+            this.segment = segment;
+            this.frequency = frequency;
+        }
+    }
+
+    private static final class Segment {
+        private final ByteBuffer buffer;
+        private final long fileLength;
+        private final long lastModified;
+        private volatile long lastAccess = System.nanoTime();
+
+        private Segment(ByteBuffer buffer, long fileLength, long lastModified) {
+            this.buffer = buffer;
+            this.fileLength = fileLength;
+            this.lastModified = lastModified;
+        }
+
+        private boolean matches(StoredFile file) {
+            return fileLength == file.getLength() && lastModified == file.getLastModified();
+        }
+    }
+}
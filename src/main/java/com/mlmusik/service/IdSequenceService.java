@@ -0,0 +1,48 @@
+package com.mlmusik.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the pooled id sequences of songs and albums ahead of the ids already in use.
+ *
+ * Rows inserted while the tables used identity columns (or imported with explicit ids) are not
+ * known to the sequences Hibernate created, so before the first insert each sequence is moved
+ * past the highest id plus one allocation block.
+ */
+@Service
+@DependsOn("entityManagerFactory")
+public class IdSequenceService {
+
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void align() {
+        align("songs", "songs_seq");
+        align("albums", "albums_seq");
+    }
+
+    private void align(String table, String sequence) {
+        try {
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+            Long lastValue = jdbcTemplate.queryForObject("SELECT last_value FROM " + sequence, Long.class);
+            if (maxId == null || lastValue == null) {
+                return;
+            }
+            // The pooled optimizer hands out (value - 49) .. value for each value the sequence returns
+            long next = maxId + ALLOCATION_SIZE;
+            if (lastValue < next) {
+                jdbcTemplate.queryForObject("SELECT setval(?::regclass, ?, false)", Long.class, sequence, next);
+                System.out.println("Moved " + sequence + " past existing " + table + " ids (" + maxId + ")");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Could not align " + sequence + ": " + e.getMessage());
+        }
+    }
+}
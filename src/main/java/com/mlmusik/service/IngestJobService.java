@@ -0,0 +1,313 @@
+package com.mlmusik.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mlmusik.model.AlbumImport;
+import com.mlmusik.model.IngestJob;
+import com.mlmusik.repository.IngestJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background processing of uploads.
+ *
+ * An upload is accepted by moving its files into a spool directory and inserting a QUEUED job
+ * row with a manifest of the files; the request returns right away. A fixed number of workers
+ * then tags, stores and persists the upload. The job is marked SUCCEEDED in the same
+ * transaction that inserts the song or album, so a job is never ingested twice, and jobs still
+ * QUEUED or RUNNING at startup are queued again. Uploads carrying an idempotency key that was
+ * seen before return the existing job instead of creating another one.
+ */
+@Service
+public class IngestJobService {
+
+    public static final int MAX_KEY_LENGTH = 255;
+    private static final int MAX_MESSAGE_LENGTH = 1000;
+
+    @Autowired
+    private IngestJobRepository jobRepository;
+
+    @Autowired
+    private SongService songService;
+
+    @Autowired
+    private AlbumService albumService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${ingest.jobs.spool-dir:./uploads/spool}")
+    private String spoolDir;
+
+    @Value("${ingest.jobs.workers:2}")
+    private int workers;
+
+    private ExecutorService jobPool;
+
+    // Jobs queued or running in this process, so a job is never handed to two workers
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void start() {
+        try {
+            Files.createDirectories(Paths.get(spoolDir));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create spool directory!", e);
+        }
+        AtomicInteger threads = new AtomicInteger();
+        // The queue only holds job ids; the jobs themselves are in the database
+        jobPool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                task -> {
+                    Thread thread = new Thread(task, "ingest-job-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        jobPool.shutdownNow();
+    }
+
+    /**
+     * Queues jobs left unfinished by the previous run
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(30)
+    public void recover() {
+        try {
+            List<IngestJob> pending = jobRepository.findByStatusInOrderByIdAsc(
+                    EnumSet.of(IngestJob.Status.QUEUED, IngestJob.Status.RUNNING));
+            for (IngestJob job : pending) {
+                schedule(job.getId());
+            }
+            if (!pending.isEmpty()) {
+                System.out.println("Requeued " + pending.size() + " unfinished ingest jobs");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Could not recover ingest jobs: " + e.getMessage());
+        }
+    }
+
+    public Optional<IngestJob> getJob(Long id) {
+        return jobRepository.findById(id);
+    }
+
+    /**
+     * Spools a single track upload and queues its job
+     * @param idempotencyKey Key of the upload request, or null
+     */
+    public IngestJob submitSong(String idempotencyKey, String title, String artist, String featuredArtists,
+                                String producer, MultipartFile coverArt, MultipartFile mp3File) throws IOException {
+        Optional<IngestJob> existing = findByKey(idempotencyKey);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        Path dir = newSpoolDir();
+        try {
+            AlbumImport manifest = new AlbumImport();
+            manifest.setTitle(title);
+            manifest.setArtist(artist);
+            manifest.setCoverArt(spool(coverArt, dir, "cover", ".jpg"));
+            manifest.getTracks().add(track(title, artist, featuredArtists, producer, null,
+                    spool(mp3File, dir, "track-1", ".mp3")));
+            return enqueue(IngestJob.Type.SONG, idempotencyKey, dir, manifest);
+        } catch (IOException | RuntimeException e) {
+            deleteSpool(dir);
+            throw e;
+        }
+    }
+
+    /**
+     * Spools an album upload and queues its job; the song arrays are parallel and of equal length
+     * @param idempotencyKey Key of the upload request, or null
+     */
+    public IngestJob submitAlbum(String idempotencyKey, String title, String artist, MultipartFile coverArt,
+                                 String[] songTitles, String[] songArtists, String[] songFeaturedArtists,
+                                 String[] songProducers, Integer[] songTrackNumbers,
+                                 MultipartFile[] mp3Files) throws IOException {
+        Optional<IngestJob> existing = findByKey(idempotencyKey);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        Path dir = newSpoolDir();
+        try {
+            AlbumImport manifest = new AlbumImport();
+            manifest.setTitle(title);
+            manifest.setArtist(artist);
+            manifest.setCoverArt(spool(coverArt, dir, "cover", ".jpg"));
+            for (int i = 0; i < songTitles.length; i++) {
+                String featuredArtists = songFeaturedArtists != null ? songFeaturedArtists[i] : null;
+                manifest.getTracks().add(track(songTitles[i], songArtists[i], featuredArtists, songProducers[i],
+                        songTrackNumbers[i], spool(mp3Files[i], dir, "track-" + (i + 1), ".mp3")));
+            }
+            return enqueue(IngestJob.Type.ALBUM, idempotencyKey, dir, manifest);
+        } catch (IOException | RuntimeException e) {
+            deleteSpool(dir);
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a job for files that are already in a spool directory, e.g. a finalized resumable
+     * upload; the manifest's paths are relative to that directory
+     */
+    public IngestJob submitSpooled(IngestJob.Type type, Path dir, AlbumImport manifest) throws IOException {
+        return enqueue(type, null, dir, manifest);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key is longer than MAX_KEY_LENGTH
+     */
+    private Optional<IngestJob> findByKey(String idempotencyKey) {
+        if (idempotencyKey != null && idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        return idempotencyKey != null ? jobRepository.findByIdempotencyKey(idempotencyKey) : Optional.empty();
+    }
+
+    private IngestJob enqueue(IngestJob.Type type, String idempotencyKey, Path dir, AlbumImport manifest)
+            throws IOException {
+        IngestJob job = new IngestJob(type, idempotencyKey, dir.toString(),
+                objectMapper.writeValueAsString(manifest), manifest.getTracks().size());
+        try {
+            job = jobRepository.save(job);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent retry with the same key was accepted first
+            deleteSpool(dir);
+            return jobRepository.findByIdempotencyKey(idempotencyKey).orElseThrow(() -> e);
+        }
+        schedule(job.getId());
+        return job;
+    }
+
+    private void schedule(Long jobId) {
+        if (!scheduled.add(jobId)) {
+            return;
+        }
+        jobPool.execute(() -> {
+            try {
+                run(jobId);
+            } finally {
+                scheduled.remove(jobId);
+            }
+        });
+    }
+
+    private void run(Long jobId) {
+        IngestJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null || job.getStatus() == IngestJob.Status.SUCCEEDED || job.getStatus() == IngestJob.Status.FAILED) {
+            return;
+        }
+        job.setStatus(IngestJob.Status.RUNNING);
+        job.setCompletedTracks(0);
+        IngestJob running = jobRepository.save(job);
+        Path dir = Paths.get(running.getSpoolDir());
+        AtomicInteger completed = new AtomicInteger();
+        try {
+            AlbumImport manifest = objectMapper.readValue(running.getManifest(), AlbumImport.class);
+            if (running.getType() == IngestJob.Type.SONG) {
+                AlbumImport.Track track = manifest.getTracks().get(0);
+                songService.createSingleTrack(track.getTitle(), track.getArtist(), track.getFeaturedArtists(),
+                        track.getProducer(), dir.resolve(manifest.getCoverArt()), dir.resolve(track.getFile()),
+                        song -> succeed(running, song.getId()));
+            } else {
+                albumService.createAlbumFromSpool(manifest, dir,
+                        () -> jobRepository.updateProgress(jobId, completed.incrementAndGet(), LocalDateTime.now()),
+                        album -> succeed(running, album.getId()));
+            }
+        } catch (Exception e) {
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            // The job row commits with the song or album; a failure after that commit (e.g. in an
+            // after-commit step) must not turn a stored upload into a failed job
+            if (jobRepository.markFailed(jobId, completed.get(),
+                    message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message,
+                    LocalDateTime.now()) > 0) {
+                System.err.println("Ingest job " + jobId + " failed: " + message);
+            } else {
+                System.err.println("Ingest job " + jobId + " succeeded, but a later step failed: " + message);
+            }
+        }
+        deleteSpool(dir);
+    }
+
+    /**
+     * Runs inside the transaction that inserts the song or album
+     */
+    private void succeed(IngestJob job, Long resultId) {
+        job.setStatus(IngestJob.Status.SUCCEEDED);
+        job.setCompletedTracks(job.getTotalTracks());
+        job.setResultId(resultId);
+        job.setMessage(null);
+        jobRepository.save(job);
+    }
+
+    static AlbumImport.Track track(String title, String artist, String featuredArtists, String producer,
+                                   Integer trackNumber, String file) {
+        AlbumImport.Track track = new AlbumImport.Track();
+        track.setTitle(title);
+        track.setArtist(artist);
+        track.setFeaturedArtists(featuredArtists);
+        track.setProducer(producer);
+        track.setTrackNumber(trackNumber);
+        track.setFile(file);
+        return track;
+    }
+
+    private Path newSpoolDir() throws IOException {
+        return Files.createDirectories(Paths.get(spoolDir).resolve(UUID.randomUUID().toString()));
+    }
+
+    /**
+     * Moves an uploaded part into the spool directory (the container's temp file is usually
+     * renamed, not copied) and returns its spooled filename
+     */
+    private static String spool(MultipartFile file, Path dir, String name, String defaultExtension) throws IOException {
+        String filename = name + extension(file.getOriginalFilename(), defaultExtension);
+        file.transferTo(dir.resolve(filename));
+        return filename;
+    }
+
+    static String extension(String originalFilename, String defaultExtension) {
+        if (originalFilename == null) {
+            return defaultExtension;
+        }
+        String name = originalFilename.substring(
+                Math.max(originalFilename.lastIndexOf('/'), originalFilename.lastIndexOf('\\')) + 1);
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && dot < name.length() - 1 ? name.substring(dot) : defaultExtension;
+    }
+
+    private static void deleteSpool(Path dir) {
+        try {
+            FileSystemUtils.deleteRecursively(dir);
+        } catch (IOException e) {
+            System.err.println("Could not delete spool directory " + dir + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.mlmusik.service;
+
+import jakarta.persistence.criteria.Path;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset (cursor) pagination over catalog tables.
+ *
+ * Rows are ordered by (sort column, id) and a page continues strictly after the last row of the
+ * previous one, so every page is one index range scan no matter how deep the client scrolls.
+ * The cursor handed to clients is an opaque encoding of that last (value, id) pair.
+ */
+public final class Keyset {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 200;
+
+    private Keyset() {
+    }
+
+    /**
+     * Sort keys available on catalog listings, with the matching song and album properties
+     */
+    public enum SortKey {
+        CREATED_AT("createdAt", "createdAt", "createdAt"),
+        VIEWS("views", "views", "totalViews"),
+        LIKES("likes", "likes", "totalLikes"),
+        DOWNLOADS("downloads", "downloads", "totalDownloads");
+
+        private final String param;
+        private final String songProperty;
+        private final String albumProperty;
+
+        SortKey(String param, String songProperty, String albumProperty) {
+            this.param = param;
+            this.songProperty = songProperty;
+            this.albumProperty = albumProperty;
+        }
+
+        public String getSongProperty() {
+            return songProperty;
+        }
+
+        public String getAlbumProperty() {
+            return albumProperty;
+        }
+
+        /**
+         * Parses a sort request parameter; null if it is not a supported key
+         */
+        public static SortKey fromParam(String value) {
+            for (SortKey key : values()) {
+                if (key.param.equalsIgnoreCase(value)) {
+                    return key;
+                }
+            }
+            return null;
+        }
+
+        private Comparable<?> parseValue(String value) {
+            return this == CREATED_AT ? LocalDateTime.parse(value) : Long.valueOf(value);
+        }
+    }
+
+    /**
+     * Position after the last row of a page
+     */
+    public static final class Cursor {
+        private final Comparable<?> value;
+        private final long id;
+
+        private Cursor(Comparable<?> value, long id) {
+            this.value = value;
+            this.id = id;
+        }
+
+        /**
+         * Decodes a client cursor
+         * @throws IllegalArgumentException if the cursor is malformed or belongs to another sort key
+         */
+        public static Cursor decode(String cursor, SortKey key) {
+            return decode(cursor, key::parseValue);
+        }
+
+        /**
+         * Decodes a client cursor whose value is parsed by the given function
+         * @throws IllegalArgumentException if the cursor is malformed
+         */
+        public static Cursor decode(String cursor, Function<String, Comparable<?>> valueParser) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.lastIndexOf('|');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                return new Cursor(valueParser.apply(decoded.substring(0, separator)),
+                        Long.parseLong(decoded.substring(separator + 1)));
+            } catch (DateTimeParseException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+
+        public Comparable<?> getValue() {
+            return value;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public static String encode(Object value, Long id) {
+            String raw = value + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * One page of results and the cursor of the next page (null on the last page)
+     */
+    public static final class Page<T> {
+        private final List<T> items;
+        private final String nextCursor;
+
+        public Page(List<T> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * Clamps a requested page size to [1, MAX_LIMIT]
+     */
+    public static int clampLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * Order of a keyset listing: the sort column, then id as tie-breaker
+     */
+    public static Sort sort(String property, Sort.Direction direction) {
+        return Sort.by(direction, property).and(Sort.by(direction, "id"));
+    }
+
+    /**
+     * Rows strictly after the cursor in (property, id) order; no restriction for the first page
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> Specification<T> after(String property, Sort.Direction direction, Cursor cursor) {
+        return (root, query, cb) -> {
+            if (cursor == null) {
+                return null;
+            }
+            Path<Comparable> column = root.get(property);
+            Path<Long> id = root.get("id");
+            Comparable value = cursor.value;
+            if (direction == Sort.Direction.DESC) {
+                return cb.or(cb.lessThan(column, value),
+                        cb.and(cb.equal(column, value), cb.lessThan(id, cursor.id)));
+            }
+            return cb.or(cb.greaterThan(column, value),
+                    cb.and(cb.equal(column, value), cb.greaterThan(id, cursor.id)));
+        };
+    }
+
+    /**
+     * Equality filter that is skipped when no value is given
+     */
+    public static <T> Specification<T> equalTo(String property, String value) {
+        return (root, query, cb) -> value == null || value.isBlank() ? null : cb.equal(root.get(property), value);
+    }
+}
@@ -0,0 +1,240 @@
+package com.mlmusik.service;
+
+import com.mlmusik.model.Song;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Approximate unique listeners per song and per album.
+ *
+ * Each played song and album keeps a lifetime {@link HyperLogLog} plus one per UTC day for the
+ * last week (1 KB each, allocated on the first play of the day). Window estimates merge the
+ * daily sketches, so retries and replays by the same listener are counted once. Sketches are
+ * checkpointed to the state directory periodically and on shutdown.
+ */
+@Service
+public class ListenerService {
+
+    private static final int CHECKPOINT_MAGIC = 0x484C4C31; // "HLL1"
+    private static final int DAYS = 7;
+
+    /**
+     * Supported estimation windows
+     */
+    public enum Window {
+        DAY("1d"),
+        WEEK("7d"),
+        LIFETIME("all");
+
+        private final String label;
+
+        Window(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Parses "1d", "7d" or "all"; null if the value is not a supported window
+         */
+        public static Window fromLabel(String value) {
+            for (Window window : values()) {
+                if (window.label.equalsIgnoreCase(value)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Value("${file.upload.state-dir:./uploads/state}")
+    private String stateDir;
+
+    private final Map<Long, Sketches> songs = new ConcurrentHashMap<>();
+    private final Map<Long, Sketches> albums = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void restore() {
+        Path checkpoint = checkpointPath();
+        if (!Files.isRegularFile(checkpoint)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a listener checkpoint");
+            }
+            readAll(in, songs);
+            readAll(in, albums);
+            System.out.println("Listener sketches restored for " + songs.size() + " songs");
+        } catch (IOException e) {
+            System.err.println("Could not restore listener sketches: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a listener to the song's and its album's sketches
+     * @param song The played song
+     * @param listener Client fingerprint (client id, or address and user agent)
+     */
+    public void recordListener(Song song, String listener) {
+        if (listener == null || listener.isEmpty()) {
+            return;
+        }
+        long hash = HyperLogLog.hash(listener);
+        long day = today();
+        songs.computeIfAbsent(song.getId(), id -> new Sketches()).add(hash, day);
+        if (song.getAlbum() != null && song.getAlbum().getId() != null) {
+            albums.computeIfAbsent(song.getAlbum().getId(), id -> new Sketches()).add(hash, day);
+        }
+    }
+
+    public long getSongListeners(Long songId, Window window) {
+        Sketches sketches = songs.get(songId);
+        return sketches != null ? sketches.estimate(window, today()) : 0;
+    }
+
+    public long getAlbumListeners(Long albumId, Window window) {
+        Sketches sketches = albums.get(albumId);
+        return sketches != null ? sketches.estimate(window, today()) : 0;
+    }
+
+    /**
+     * Drops the sketches of a deleted song
+     */
+    public void removeSong(Long songId) {
+        songs.remove(songId);
+    }
+
+    /**
+     * Drops the sketches of a deleted album
+     */
+    public void removeAlbum(Long albumId) {
+        albums.remove(albumId);
+    }
+
+    @Scheduled(fixedDelayString = "${listeners.checkpoint-interval-ms:300000}")
+    @PreDestroy
+    public synchronized void checkpoint() {
+        Path target = checkpointPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(CHECKPOINT_MAGIC);
+                writeAll(out, songs);
+                writeAll(out, albums);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not checkpoint listener sketches: " + e.getMessage());
+        }
+    }
+
+    private void writeAll(DataOutputStream out, Map<Long, Sketches> sketches) throws IOException {
+        List<Map.Entry<Long, Sketches>> snapshot = new ArrayList<>(sketches.entrySet());
+        out.writeInt(snapshot.size());
+        for (Map.Entry<Long, Sketches> entry : snapshot) {
+            out.writeLong(entry.getKey());
+            entry.getValue().write(out);
+        }
+    }
+
+    private void readAll(DataInputStream in, Map<Long, Sketches> sketches) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long id = in.readLong();
+            sketches.put(id, Sketches.read(in));
+        }
+    }
+
+    private Path checkpointPath() {
+        return Paths.get(stateDir, "listeners.bin");
+    }
+
+    private static long today() {
+        return LocalDate.now(ZoneOffset.UTC).toEpochDay();
+    }
+
+    /**
+     * Lifetime sketch plus a ring of daily sketches; a slot is reused once its day has passed
+     */
+    private static final class Sketches {
+        private HyperLogLog lifetime = new HyperLogLog();
+        private final HyperLogLog[] days = new HyperLogLog[DAYS];
+        private final long[] dayNumbers = new long[DAYS];
+
+        private synchronized void add(long hash, long day) {
+            lifetime.add(hash);
+            int slot = (int) (day % DAYS);
+            if (days[slot] == null || dayNumbers[slot] != day) {
+                days[slot] = new HyperLogLog();
+                dayNumbers[slot] = day;
+            }
+            days[slot].add(hash);
+        }
+
+        private synchronized long estimate(Window window, long today) {
+            if (window == Window.LIFETIME) {
+                return lifetime.estimate();
+            }
+            int span = window == Window.DAY ? 1 : DAYS;
+            HyperLogLog merged = new HyperLogLog();
+            for (int i = 0; i < DAYS; i++) {
+                if (days[i] != null && dayNumbers[i] > today - span && dayNumbers[i] <= today) {
+                    merged.merge(days[i]);
+                }
+            }
+            return merged.estimate();
+        }
+
+        private synchronized void write(DataOutputStream out) throws IOException {
+            out.write(lifetime.toBytes());
+            for (int i = 0; i < DAYS; i++) {
+                out.writeLong(days[i] != null ? dayNumbers[i] : -1);
+                if (days[i] != null) {
+                    out.write(days[i].toBytes());
+                }
+            }
+        }
+
+        private static Sketches read(DataInputStream in) throws IOException {
+            Sketches sketches = new Sketches();
+            sketches.lifetime = HyperLogLog.fromBytes(readRegisters(in));
+            for (int i = 0; i < DAYS; i++) {
+                long day = in.readLong();
+                if (day >= 0) {
+                    sketches.days[i] = HyperLogLog.fromBytes(readRegisters(in));
+                    sketches.dayNumbers[i] = day;
+                }
+            }
+            return sketches;
+        }
+
+        private static byte[] readRegisters(DataInputStream in) throws IOException {
+            byte[] registers = new byte[HyperLogLog.REGISTERS];
+            in.readFully(registers);
+            return registers;
+        }
+    }
+}
@@ -1,216 +1,150 @@
 package com.mlmusik.service;
 
 import com.mpatric.mp3agic.ID3v24Tag;
-import com.mpatric.mp3agic.Mp3File;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
 
 @Service
 public class MP3MetadataService {
 
-    /**
-     * Creates a fresh ID3v24Tag to avoid obsolete frames issues.
-     * Always creates a new tag instead of reusing existing ones that may contain obsolete frames.
-     */
-    private ID3v24Tag createFreshTag(Mp3File mp3) {
-        // Always create a fresh ID3v24Tag to avoid "Packing Obsolete frames" error
-        // This ensures we don't try to pack obsolete frames from older ID3v2 versions
-        return new ID3v24Tag();
-    }
+    private static final int ID3V2_HEADER_LENGTH = 10;
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
 
     /**
-     * Combined method to set all metadata and embed cover art in a single operation.
-     * This is much more efficient than calling separate methods multiple times.
-     * 
-     * @param mp3FilePath Path to the MP3 file
-     * @param title Song title
-     * @param artist Song artist
-     * @param featuredArtists Featured artists
-     * @param producer Producer
-     * @param trackNumber Track number
-     * @param albumTitle Album title (optional)
-     * @param albumArtist Album artist (optional)
-     * @param coverArtFilePath Path to the cover art image file (optional)
-     * @throws Exception If setting metadata fails
+     * A file written by {@link #writeTagged}
      */
-    public void setAllMetadata(String mp3FilePath, String title, String artist, 
-                              String featuredArtists, String producer, Integer trackNumber,
-                              String albumTitle, String albumArtist, String coverArtFilePath) throws Exception {
-        try {
-            File mp3File = new File(mp3FilePath);
-            if (!mp3File.exists()) {
-                throw new IOException("MP3 file not found: " + mp3FilePath);
-            }
+    public static final class TaggedFile {
+        private final String etag;
+        private final SeekIndex seekIndex;
 
-            // Read MP3 file
-            Mp3File mp3 = new Mp3File(mp3FilePath);
-            
-            // Always create a fresh ID3v24Tag to avoid obsolete frames error
-            ID3v24Tag id3v2Tag = createFreshTag(mp3);
-            mp3.setId3v2Tag(id3v2Tag);
-
-            // Set song metadata fields
-            if (title != null) id3v2Tag.setTitle(title);
-            if (artist != null) {
-                String artistName = artist;
-                if (featuredArtists != null && !featuredArtists.isEmpty()) {
-                    artistName = artist + " ft. " + featuredArtists;
-                }
-                id3v2Tag.setArtist(artistName);
-            }
-            if (producer != null) {
-                // Producer is stored in TPE4 frame (usually "Interpreted, remixed, or otherwise modified by")
-                id3v2Tag.setOriginalArtist(producer);
-            }
-            if (trackNumber != null) {
-                id3v2Tag.setTrack(String.valueOf(trackNumber));
-            }
-
-            // Set album metadata if provided
-            if (albumTitle != null) id3v2Tag.setAlbum(albumTitle);
-            if (albumArtist != null) id3v2Tag.setAlbumArtist(albumArtist);
+        private TaggedFile(String etag, SeekIndex seekIndex) {
+            this.etag = etag;
+            this.seekIndex = seekIndex;
+        }
 
-            // Embed cover art if provided
-            if (coverArtFilePath != null) {
-                File coverArtFile = new File(coverArtFilePath);
-                if (coverArtFile.exists()) {
-                    byte[] imageData = Files.readAllBytes(coverArtFile.toPath());
-                    id3v2Tag.setAlbumImage(imageData, getMimeType(coverArtFilePath));
-                }
-            }
+        /** Hex SHA-256 of the written file */
+        public String getEtag() {
+            return etag;
+        }
 
-            // Save the MP3 file with updated tag (single write operation)
-            String tempPath = mp3FilePath + ".tmp";
-            mp3.save(tempPath);
-            
-            // Atomic file replacement
-            File originalFile = new File(mp3FilePath);
-            File tempFile = new File(tempPath);
-            if (originalFile.delete()) {
-                if (!tempFile.renameTo(originalFile)) {
-                    throw new IOException("Failed to rename temporary file");
-                }
-            } else {
-                throw new IOException("Failed to delete original file");
-            }
-            
-        } catch (Exception e) {
-            throw new Exception("Failed to set MP3 metadata: " + e.getMessage(), e);
+        /** Seek index of the written file, empty if it has no audio frames */
+        public SeekIndex getSeekIndex() {
+            return seekIndex;
         }
     }
 
     /**
-     * Embeds cover art into MP3 file metadata
-     * @param mp3FilePath Path to the MP3 file
-     * @param coverArtFilePath Path to the cover art image file
-     * @throws Exception If embedding fails
+     * Single-pass ingest: writes an MP3 from an upload or import stream straight to its final
+     * location with a freshly built tag. Any ID3v2 tags at the start of the stream are skipped
+     * while reading, the new tag is written first and the rest of the stream (audio frames and
+     * any trailing ID3v1 tag) is copied behind it unchanged. The file is written once, next to
+     * the target, and moved into place atomically; its SHA-256 and its seek index (the frame
+     * scan) are computed from the same buffers on the way, so the file is never read back.
+     *
+     * @param source Stream of the original MP3 (closed by this method)
+     * @param mp3FilePath Final path of the tagged MP3
+     * @return The file's ETag value and seek index
+     * @throws Exception If reading the source or writing the file fails
      */
-    public void embedCoverArt(String mp3FilePath, String coverArtFilePath) throws Exception {
-        try {
-            File mp3File = new File(mp3FilePath);
-            File coverArtFile = new File(coverArtFilePath);
-
-            if (!mp3File.exists()) {
-                throw new IOException("MP3 file not found: " + mp3FilePath);
-            }
-            if (!coverArtFile.exists()) {
-                throw new IOException("Cover art file not found: " + coverArtFilePath);
-            }
-
-            // Read MP3 file
-            Mp3File mp3 = new Mp3File(mp3FilePath);
-            
-            // Always create a fresh ID3v24Tag to avoid obsolete frames error
-            ID3v24Tag id3v2Tag = createFreshTag(mp3);
-            mp3.setId3v2Tag(id3v2Tag);
-
-            // Read cover art image
-            byte[] imageData = Files.readAllBytes(coverArtFile.toPath());
-            
-            // Set album art (APIC frame)
-            id3v2Tag.setAlbumImage(imageData, getMimeType(coverArtFilePath));
-            
-            // Save the MP3 file with updated tag
-            String tempPath = mp3FilePath + ".tmp";
-            mp3.save(tempPath);
-            
-            // Atomic file replacement
-            File originalFile = new File(mp3FilePath);
-            File tempFile = new File(tempPath);
-            if (originalFile.delete()) {
-                if (!tempFile.renameTo(originalFile)) {
-                    throw new IOException("Failed to rename temporary file");
+    public TaggedFile writeTagged(InputStream source, String mp3FilePath, String title, String artist,
+                              String featuredArtists, String producer, Integer trackNumber,
+                              String albumTitle, String albumArtist, String coverArtFilePath) throws Exception {
+        Path target = Paths.get(mp3FilePath);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (PushbackInputStream in = new PushbackInputStream(source, ID3V2_HEADER_LENGTH)) {
+            byte[] tag = buildTag(title, artist, featuredArtists, producer, trackNumber,
+                                  albumTitle, albumArtist, coverArtFilePath).toBytes();
+            skipId3v2Tags(in);
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            Mp3Frames.Scanner frames = new Mp3Frames.Scanner(tag.length);
+            try (OutputStream out = new BufferedOutputStream(
+                    new DigestOutputStream(Files.newOutputStream(temp), digest), WRITE_BUFFER_SIZE)) {
+                out.write(tag);
+                byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                    frames.update(buffer, 0, read);
                 }
-            } else {
-                throw new IOException("Failed to delete original file");
             }
-            
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new TaggedFile(HexFormat.of().formatHex(digest.digest()), frames.finish());
         } catch (Exception e) {
-            throw new Exception("Failed to embed cover art into MP3: " + e.getMessage(), e);
+            Files.deleteIfExists(temp);
+            throw new Exception("Failed to write tagged MP3: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Sets MP3 metadata (title, artist, featured artists, producer, track number)
-     * @param mp3FilePath Path to the MP3 file
-     * @param title Song title
-     * @param artist Song artist
-     * @param featuredArtists Featured artists
-     * @param producer Producer
-     * @param trackNumber Track number
-     * @throws Exception If setting metadata fails
+     * Reads past every ID3v2 tag at the start of the stream (some files carry more than one)
      */
-    public void setMetadata(String mp3FilePath, String title, String artist, 
-                           String featuredArtists, String producer, Integer trackNumber) throws Exception {
-        // Use the combined method for consistency
-        setAllMetadata(mp3FilePath, title, artist, featuredArtists, producer, trackNumber, null, null, null);
+    private void skipId3v2Tags(PushbackInputStream in) throws IOException {
+        byte[] header = new byte[ID3V2_HEADER_LENGTH];
+        while (true) {
+            int read = in.readNBytes(header, 0, header.length);
+            int tagSize = Mp3Frames.id3v2Size(ByteBuffer.wrap(header, 0, read));
+            if (tagSize == 0) {
+                in.unread(header, 0, read);
+                return;
+            }
+            in.skipNBytes(tagSize - ID3V2_HEADER_LENGTH);
+        }
     }
 
     /**
-     * Sets album metadata for MP3
-     * @param mp3FilePath Path to the MP3 file
-     * @param albumTitle Album title
-     * @param albumArtist Album artist
-     * @throws Exception If setting metadata fails
+     * Builds the ID3v2.4 tag written at ingest; featured artists are appended to the artist
      */
-    public void setAlbumMetadata(String mp3FilePath, String albumTitle, String albumArtist) throws Exception {
-        try {
-            File mp3File = new File(mp3FilePath);
-            if (!mp3File.exists()) {
-                throw new IOException("MP3 file not found: " + mp3FilePath);
+    private ID3v24Tag buildTag(String title, String artist, String featuredArtists, String producer,
+                               Integer trackNumber, String albumTitle, String albumArtist,
+                               String coverArtFilePath) throws IOException {
+        // Always create a fresh ID3v24Tag to avoid obsolete frames error
+        ID3v24Tag id3v2Tag = new ID3v24Tag();
+
+        // Set song metadata fields
+        if (title != null) id3v2Tag.setTitle(title);
+        if (artist != null) {
+            String artistName = artist;
+            if (featuredArtists != null && !featuredArtists.isEmpty()) {
+                artistName = artist + " ft. " + featuredArtists;
             }
+            id3v2Tag.setArtist(artistName);
+        }
+        if (producer != null) {
+            // Producer is stored in TPE4 frame (usually "Interpreted, remixed, or otherwise modified by")
+            id3v2Tag.setOriginalArtist(producer);
+        }
+        if (trackNumber != null) {
+            id3v2Tag.setTrack(String.valueOf(trackNumber));
+        }
 
-            // Read MP3 file
-            Mp3File mp3 = new Mp3File(mp3FilePath);
-            
-            // Always create a fresh ID3v24Tag to avoid obsolete frames error
-            ID3v24Tag id3v2Tag = createFreshTag(mp3);
-            mp3.setId3v2Tag(id3v2Tag);
-
-            if (albumTitle != null) id3v2Tag.setAlbum(albumTitle);
-            if (albumArtist != null) id3v2Tag.setAlbumArtist(albumArtist);
-
-            // Save the MP3 file with updated tag
-            String tempPath = mp3FilePath + ".tmp";
-            mp3.save(tempPath);
-            
-            // Atomic file replacement
-            File originalFile = new File(mp3FilePath);
-            File tempFile = new File(tempPath);
-            if (originalFile.delete()) {
-                if (!tempFile.renameTo(originalFile)) {
-                    throw new IOException("Failed to rename temporary file");
-                }
-            } else {
-                throw new IOException("Failed to delete original file");
+        // Set album metadata if provided
+        if (albumTitle != null) id3v2Tag.setAlbum(albumTitle);
+        if (albumArtist != null) id3v2Tag.setAlbumArtist(albumArtist);
+
+        // Embed cover art if provided
+        if (coverArtFilePath != null) {
+            File coverArtFile = new File(coverArtFilePath);
+            if (coverArtFile.exists()) {
+                byte[] imageData = Files.readAllBytes(coverArtFile.toPath());
+                id3v2Tag.setAlbumImage(imageData, getMimeType(coverArtFilePath));
             }
-            
-        } catch (Exception e) {
-            throw new Exception("Failed to set album metadata: " + e.getMessage(), e);
         }
+        return id3v2Tag;
     }
 
     /**
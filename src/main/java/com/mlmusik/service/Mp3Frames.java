@@ -0,0 +1,338 @@
+package com.mlmusik.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Minimal MPEG audio (MP3) frame header parsing, enough to locate frames and derive timing.
+ */
+public final class Mp3Frames {
+
+    private static final int[][] BITRATES_KBPS = {
+            // MPEG-1 Layer III
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, -1},
+            // MPEG-2/2.5 Layer III
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, -1},
+    };
+
+    private static final int[][] SAMPLE_RATES = {
+            {44100, 48000, 32000},  // MPEG-1
+            {22050, 24000, 16000},  // MPEG-2
+            {11025, 12000, 8000},   // MPEG-2.5
+    };
+
+    private static final int XING = 0x58696E67; // "Xing"
+    private static final int INFO = 0x496E666F; // "Info"
+
+    private Mp3Frames() {
+    }
+
+    /**
+     * A decoded Layer III frame header
+     */
+    public static final class FrameHeader {
+        private final int bitrateKbps;
+        private final int sampleRate;
+        private final int samplesPerFrame;
+        private final int frameLength;
+        private final boolean mpeg1;
+        private final boolean mono;
+
+        private FrameHeader(int bitrateKbps, int sampleRate, int samplesPerFrame, int frameLength,
+                            boolean mpeg1, boolean mono) {
+            this.bitrateKbps = bitrateKbps;
+            this.sampleRate = sampleRate;
+            this.samplesPerFrame = samplesPerFrame;
+            this.frameLength = frameLength;
+            this.mpeg1 = mpeg1;
+            this.mono = mono;
+        }
+
+        public int getBitrateKbps() {
+            return bitrateKbps;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public int getSamplesPerFrame() {
+            return samplesPerFrame;
+        }
+
+        public int getFrameLength() {
+            return frameLength;
+        }
+
+        /**
+         * Offset of a Xing/Info header inside the frame (after the side information)
+         */
+        int getXingOffset() {
+            if (mpeg1) {
+                return mono ? 4 + 17 : 4 + 32;
+            }
+            return mono ? 4 + 9 : 4 + 17;
+        }
+    }
+
+    /**
+     * Decodes a 32-bit big-endian frame header
+     * @return The header, or null if the bits are not a valid Layer III header
+     */
+    public static FrameHeader parseHeader(int header) {
+        if ((header & 0xFFE00000) != 0xFFE00000) {
+            return null;
+        }
+        int versionBits = (header >>> 19) & 0x3;
+        int layerBits = (header >>> 17) & 0x3;
+        int bitrateIndex = (header >>> 12) & 0xF;
+        int sampleRateIndex = (header >>> 10) & 0x3;
+        int padding = (header >>> 9) & 0x1;
+        int channelMode = (header >>> 6) & 0x3;
+        // versionBits: 00 = MPEG-2.5, 01 = reserved, 10 = MPEG-2, 11 = MPEG-1; only Layer III (01)
+        if (versionBits == 1 || layerBits != 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return null;
+        }
+        boolean mpeg1 = versionBits == 3;
+        int bitrateKbps = BITRATES_KBPS[mpeg1 ? 0 : 1][bitrateIndex];
+        int sampleRate = SAMPLE_RATES[mpeg1 ? 0 : (versionBits == 2 ? 1 : 2)][sampleRateIndex];
+        int samplesPerFrame = mpeg1 ? 1152 : 576;
+        int frameLength = (samplesPerFrame / 8) * bitrateKbps * 1000 / sampleRate + padding;
+        return new FrameHeader(bitrateKbps, sampleRate, samplesPerFrame, frameLength, mpeg1, channelMode == 3);
+    }
+
+    /**
+     * Size of a leading ID3v2 tag (header, body and optional footer), or 0 if there is none
+     * @param head At least the first 10 bytes of the file
+     */
+    public static int id3v2Size(ByteBuffer head) {
+        if (head.remaining() < 10 || head.get(0) != 'I' || head.get(1) != 'D' || head.get(2) != '3') {
+            return 0;
+        }
+        int flags = head.get(5) & 0xFF;
+        int size = ((head.get(6) & 0x7F) << 21) | ((head.get(7) & 0x7F) << 14)
+                | ((head.get(8) & 0x7F) << 7) | (head.get(9) & 0x7F);
+        return 10 + size + ((flags & 0x10) != 0 ? 10 : 0);
+    }
+
+    /**
+     * Walks every audio frame of a file once and builds its per-second seek table.
+     * A leading Xing/Info frame carries no audio and is skipped; garbage between frames is
+     * skipped by resynchronising on the next header that is followed by another valid frame.
+     * @return The seek index, empty if no audio frame was found
+     */
+    public static SeekIndex scan(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            FrameReader reader = new FrameReader(channel);
+            ByteBuffer tagHeader = ByteBuffer.allocate(10);
+            channel.read(tagHeader, 0);
+            tagHeader.flip();
+            long position = id3v2Size(tagHeader);
+
+            SeekIndex.Builder builder = new SeekIndex.Builder();
+            boolean first = true;
+            while (position + 4 <= reader.size) {
+                FrameHeader frame = parseHeader(reader.intAt(position));
+                if (frame == null || frame.getFrameLength() < 4) {
+                    position = reader.resync(position + 1);
+                    if (position < 0) {
+                        break;
+                    }
+                    continue;
+                }
+                if (first) {
+                    first = false;
+                    int tag = reader.intAt(position + frame.getXingOffset());
+                    if (tag == XING || tag == INFO) {
+                        position += frame.getFrameLength();
+                        continue;
+                    }
+                }
+                if (position + frame.getFrameLength() > reader.size) {
+                    break; // truncated last frame
+                }
+                builder.addFrame(position, frame);
+                position += frame.getFrameLength();
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Incremental {@link #scan} of a file while it is written: the audio bytes are fed in file
+     * order and frames are parsed, skipped and resynchronised exactly as scan does, so the file
+     * does not have to be read back. Only the bytes from the current frame on are kept.
+     */
+    public static final class Scanner {
+        private final SeekIndex.Builder builder = new SeekIndex.Builder();
+        private byte[] pending = new byte[8 * 1024];
+        private long pendingStart;
+        private int length;
+        private long position;
+        private boolean first = true;
+        private boolean synced = true;
+        private boolean done;
+
+        /**
+         * @param audioStart File offset of the first fed byte (the length of the leading ID3v2 tag)
+         */
+        public Scanner(long audioStart) {
+            this.pendingStart = audioStart;
+            this.position = audioStart;
+        }
+
+        public void update(byte[] bytes, int offset, int count) {
+            if (done || count <= 0) {
+                return;
+            }
+            // Bytes before the parse position are no longer needed
+            int drop = (int) (Math.min(position, pendingStart + length) - pendingStart);
+            if (drop > 0) {
+                System.arraycopy(pending, drop, pending, 0, length - drop);
+                length -= drop;
+                pendingStart += drop;
+            }
+            if (length + count > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, length + count));
+            }
+            System.arraycopy(bytes, offset, pending, length, count);
+            length += count;
+            parse(false);
+        }
+
+        /**
+         * Parses what is left after the last byte was fed
+         * @return The seek index, empty if no audio frame was found
+         */
+        public SeekIndex finish() {
+            if (!done) {
+                parse(true);
+                done = true;
+            }
+            return builder.build();
+        }
+
+        private void parse(boolean eof) {
+            long end = pendingStart + length;
+            while (true) {
+                if (!synced) {
+                    if (!resync(end, eof)) {
+                        return;
+                    }
+                    synced = true;
+                }
+                if (position + 4 > end) {
+                    done = eof;
+                    return;
+                }
+                FrameHeader frame = parseHeader(intAt(position));
+                if (frame == null || frame.getFrameLength() < 4) {
+                    position++;
+                    synced = false;
+                    continue;
+                }
+                if (first) {
+                    long xing = position + frame.getXingOffset();
+                    if (xing + 4 > end && !eof) {
+                        return;
+                    }
+                    first = false;
+                    int tag = xing + 4 <= end ? intAt(xing) : 0;
+                    if (tag == XING || tag == INFO) {
+                        position += frame.getFrameLength();
+                        continue;
+                    }
+                }
+                if (position + frame.getFrameLength() > end) {
+                    done = eof; // truncated last frame, or the rest has not been fed yet
+                    return;
+                }
+                builder.addFrame(position, frame);
+                position += frame.getFrameLength();
+            }
+        }
+
+        /**
+         * Moves to the next position where a frame header is followed by another one (or the end)
+         * @return false if more bytes are needed, or at the end if there is no further frame
+         */
+        private boolean resync(long end, boolean eof) {
+            for (; position + 4 <= end; position++) {
+                FrameHeader frame = parseHeader(intAt(position));
+                if (frame == null || frame.getFrameLength() < 4) {
+                    continue;
+                }
+                long next = position + frame.getFrameLength();
+                if (next + 4 > end) {
+                    return eof;
+                }
+                if (parseHeader(intAt(next)) != null) {
+                    return true;
+                }
+            }
+            done = eof;
+            return false;
+        }
+
+        private int intAt(long at) {
+            int index = (int) (at - pendingStart);
+            return ((pending[index] & 0xFF) << 24) | ((pending[index + 1] & 0xFF) << 16)
+                    | ((pending[index + 2] & 0xFF) << 8) | (pending[index + 3] & 0xFF);
+        }
+    }
+
+    /**
+     * Buffered positional reads over a file channel
+     */
+    private static final class FrameReader {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer window = ByteBuffer.allocate(64 * 1024);
+        private long windowStart = -1;
+
+        private FrameReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        /**
+         * Big-endian int at an absolute position, or 0 if it runs past the end of the file
+         */
+        private int intAt(long position) throws IOException {
+            if (position + 4 > size) {
+                return 0;
+            }
+            if (windowStart < 0 || position < windowStart || position + 4 > windowStart + window.limit()) {
+                window.clear();
+                windowStart = position;
+                while (window.hasRemaining() && channel.read(window, windowStart + window.position()) > 0) {
+                    // fill the window
+                }
+                window.flip();
+            }
+            return window.getInt((int) (position - windowStart));
+        }
+
+        /**
+         * Next position at or after from where a frame header is followed by another one (or EOF)
+         * @return The position, or -1 if there is none
+         */
+        private long resync(long from) throws IOException {
+            for (long position = from; position + 4 <= size; position++) {
+                FrameHeader frame = parseHeader(intAt(position));
+                if (frame == null || frame.getFrameLength() < 4) {
+                    continue;
+                }
+                long next = position + frame.getFrameLength();
+                if (next + 4 > size || parseHeader(intAt(next)) != null) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+    }
+}
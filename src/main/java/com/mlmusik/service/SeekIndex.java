@@ -0,0 +1,180 @@
+package com.mlmusik.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Time to byte-offset table of an MP3 file, one entry per second of audio.
+ * Entry k is the frame that is playing at k seconds: its byte offset and its frame number,
+ * from which the exact (frame-aligned) start time follows.
+ */
+public final class SeekIndex {
+
+    private static final int MAGIC = 0x4D534B31; // "MSK1"
+
+    private final int sampleRate;
+    private final int samplesPerFrame;
+    private final int totalFrames;
+    private final long audioEnd;
+    private final int[] offsets;
+    private final int[] frames;
+
+    SeekIndex(int sampleRate, int samplesPerFrame, int totalFrames, long audioEnd, int[] offsets, int[] frames) {
+        this.sampleRate = sampleRate;
+        this.samplesPerFrame = samplesPerFrame;
+        this.totalFrames = totalFrames;
+        this.audioEnd = audioEnd;
+        this.offsets = offsets;
+        this.frames = frames;
+    }
+
+    /**
+     * A frame-aligned seek target
+     */
+    public static final class Position {
+        private final long offset;
+        private final double time;
+
+        private Position(long offset, double time) {
+            this.offset = offset;
+            this.time = time;
+        }
+
+        /** Byte offset of the frame */
+        public long getOffset() {
+            return offset;
+        }
+
+        /** Exact start time of the frame in seconds */
+        public double getTime() {
+            return time;
+        }
+    }
+
+    /**
+     * Finds the frame playing at the given time
+     * @param seconds Requested position
+     * @return The frame-aligned position, or null if the time is past the end of the audio
+     */
+    public Position locate(double seconds) {
+        if (offsets.length == 0 || seconds < 0 || Double.isNaN(seconds)) {
+            return null;
+        }
+        long second = (long) Math.floor(seconds);
+        if (second >= offsets.length) {
+            return null;
+        }
+        int entry = (int) second;
+        return new Position(offsets[entry], getFrameTime(frames[entry]));
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    public int getTotalFrames() {
+        return totalFrames;
+    }
+
+    /** Offset just past the last audio frame */
+    public long getAudioEnd() {
+        return audioEnd;
+    }
+
+    /** Number of one-second entries */
+    public int size() {
+        return offsets.length;
+    }
+
+    public long getOffset(int entry) {
+        return offsets[entry];
+    }
+
+    public int getFrame(int entry) {
+        return frames[entry];
+    }
+
+    /** Start time in seconds of the given frame number */
+    public double getFrameTime(int frame) {
+        return sampleRate == 0 ? 0 : (double) frame * samplesPerFrame / sampleRate;
+    }
+
+    public double getDuration() {
+        return getFrameTime(totalFrames);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(sampleRate);
+        out.writeInt(samplesPerFrame);
+        out.writeInt(totalFrames);
+        out.writeLong(audioEnd);
+        out.writeInt(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            out.writeInt(offsets[i]);
+            out.writeInt(frames[i]);
+        }
+    }
+
+    public static SeekIndex read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a seek index");
+        }
+        int sampleRate = in.readInt();
+        int samplesPerFrame = in.readInt();
+        int totalFrames = in.readInt();
+        long audioEnd = in.readLong();
+        int count = in.readInt();
+        int[] offsets = new int[count];
+        int[] frames = new int[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = in.readInt();
+            frames[i] = in.readInt();
+        }
+        return new SeekIndex(sampleRate, samplesPerFrame, totalFrames, audioEnd, offsets, frames);
+    }
+
+    /**
+     * Accumulates frames in file order and emits one entry per second
+     */
+    static final class Builder {
+        private int sampleRate;
+        private int samplesPerFrame;
+        private int frameCount;
+        private long audioEnd;
+        private int[] offsets = new int[256];
+        private int[] frames = new int[256];
+        private int size;
+
+        void addFrame(long offset, Mp3Frames.FrameHeader frame) {
+            if (frameCount == 0) {
+                sampleRate = frame.getSampleRate();
+                samplesPerFrame = frame.getSamplesPerFrame();
+            }
+            long frameEndSamples = (long) (frameCount + 1) * samplesPerFrame;
+            // Every whole second that falls inside this frame points at it
+            while ((long) size * sampleRate < frameEndSamples) {
+                if (size == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, size * 2);
+                    frames = Arrays.copyOf(frames, size * 2);
+                }
+                offsets[size] = (int) offset;
+                frames[size] = frameCount;
+                size++;
+            }
+            frameCount++;
+            audioEnd = offset + frame.getFrameLength();
+        }
+
+        SeekIndex build() {
+            return new SeekIndex(sampleRate, samplesPerFrame, frameCount, audioEnd,
+                    Arrays.copyOf(offsets, size), Arrays.copyOf(frames, size));
+        }
+    }
+}
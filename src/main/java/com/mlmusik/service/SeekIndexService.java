@@ -0,0 +1,143 @@
+package com.mlmusik.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds, stores and looks up the seek index of each song.
+ *
+ * The index is computed at ingest while the song is written and saved to
+ * "<seek-dir>/<song filename>.seek"; songs uploaded before this existed get theirs built on the
+ * first time-based request. Concurrent requests for a missing index share one build, and every
+ * save writes through its own temporary file, so saves never overwrite each other's partial output.
+ */
+@Service
+public class SeekIndexService {
+
+    @Value("${file.upload.seek-dir:./uploads/seek}")
+    private String seekDir;
+
+    private final Map<String, SeekIndex> indexes = new ConcurrentHashMap<>();
+
+    // Builds in progress per song filename, joined by concurrent requests for the same song
+    private final Map<String, CompletableFuture<SeekIndex>> building = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initDirectory() {
+        try {
+            Files.createDirectories(Paths.get(seekDir));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create seek index directory!", e);
+        }
+    }
+
+    /**
+     * Scans a stored MP3 and saves its seek index. Must run after the tags are final, since
+     * rewriting the ID3 tag shifts every frame offset.
+     * @param mp3FullPath Full path of the stored song
+     */
+    public SeekIndex build(String mp3FullPath) {
+        File mp3 = new File(mp3FullPath);
+        try {
+            SeekIndex index = Mp3Frames.scan(mp3);
+            save(mp3FullPath, index);
+            return index;
+        } catch (IOException e) {
+            System.err.println("Could not build seek index for " + mp3.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves a seek index computed elsewhere (while the song was written at ingest)
+     * @param mp3FullPath Full path of the stored song
+     */
+    public void save(String mp3FullPath, SeekIndex index) throws IOException {
+        String name = new File(mp3FullPath).getName();
+        Path target = indexPath(name);
+        Path temp = Files.createTempFile(target.getParent(), name + ".", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                index.write(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        indexes.put(name, index);
+    }
+
+    /**
+     * Seek index of a song, loading it from disk or building it if it does not exist yet
+     */
+    public SeekIndex get(StoredFile song) {
+        SeekIndex index = indexes.get(song.getName());
+        if (index != null) {
+            return index;
+        }
+        Path path = indexPath(song.getName());
+        if (Files.isRegularFile(path) && path.toFile().lastModified() >= song.getLastModified()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                index = SeekIndex.read(in);
+                indexes.put(song.getName(), index);
+                return index;
+            } catch (IOException e) {
+                // Unreadable or stale, rebuild below
+            }
+        }
+        CompletableFuture<SeekIndex> pending = new CompletableFuture<>();
+        CompletableFuture<SeekIndex> existing = building.putIfAbsent(song.getName(), pending);
+        if (existing != null) {
+            return existing.join();
+        }
+        SeekIndex built = null;
+        try {
+            built = build(song.getFile().getPath());
+            return built;
+        } finally {
+            // Waiters get null (no index) if the build threw
+            building.remove(song.getName(), pending);
+            pending.complete(built);
+        }
+    }
+
+    /**
+     * Frame-aligned position for a time in seconds
+     * @return The position, or null if the time is past the end of the song or the file has no frames
+     */
+    public SeekIndex.Position locate(StoredFile song, double seconds) {
+        SeekIndex index = get(song);
+        return index != null ? index.locate(seconds) : null;
+    }
+
+    /**
+     * Drops the index of a deleted song
+     */
+    public void remove(String filename) {
+        indexes.remove(filename);
+        try {
+            Files.deleteIfExists(indexPath(filename));
+        } catch (IOException e) {
+            System.err.println("Could not delete seek index for " + filename + ": " + e.getMessage());
+        }
+    }
+
+    private Path indexPath(String filename) {
+        return Paths.get(seekDir, filename + ".seek");
+    }
+}
@@ -0,0 +1,12 @@
+package com.mlmusik.service;
+
+/**
+ * Engagement counters kept per song, in the order of the columns in the batched counter update.
+ */
+public enum SongCounter {
+    VIEWS,
+    LIKES,
+    DISLIKES,
+    DOWNLOADS,
+    SHARES
+}
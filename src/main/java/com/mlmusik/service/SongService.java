@@ -1,16 +1,25 @@
 package com.mlmusik.service;
 
 import com.mlmusik.model.Song;
+import com.mlmusik.model.SongListing;
 import com.mlmusik.repository.SongRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 public class SongService {
@@ -18,39 +27,154 @@ public class SongService {
     @Autowired
     private SongRepository songRepository;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CatalogCache catalogCache;
+
+    @Autowired
+    private SuggestIndex suggestIndex;
+
     @Autowired
     private FileStorageService fileStorageService;
 
     @Autowired
     private MP3MetadataService mp3MetadataService;
 
-    public List<Song> getAllSongs() {
-        return songRepository.findAll();
+    @Autowired
+    private FilePathIndex filePathIndex;
+
+    @Autowired
+    private HotSegmentCache hotSegmentCache;
+
+    @Autowired
+    private SeekIndexService seekIndexService;
+
+    @Autowired
+    private HlsService hlsService;
+
+    @Autowired
+    private CounterService counterService;
+
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private ListenerService listenerService;
+
+    /**
+     * One keyset page of songs, optionally filtered by artist and producer
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public Keyset.Page<SongListing> getSongsPage(Keyset.SortKey sortKey, Sort.Direction direction, String cursor,
+                                          int limit, String artist, String producer) {
+        String property = sortKey.getSongProperty();
+        Keyset.Cursor after = cursor != null ? Keyset.Cursor.decode(cursor, sortKey) : null;
+        Specification<Song> spec = Specification.<Song>where(Keyset.equalTo("artist", artist))
+                .and(Keyset.equalTo("producer", producer))
+                .and(Keyset.after(property, direction, after));
+        List<Song> rows = songRepository.findBy(spec,
+                query -> query.sortBy(Keyset.sort(property, direction)).limit(limit + 1).all());
+
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            Song last = rows.get(limit - 1);
+            // The cursor must carry the stored value, so it is taken before pending counters are applied
+            nextCursor = Keyset.Cursor.encode(sortValue(last, sortKey), last.getId());
+        }
+        List<SongListing> items = new ArrayList<>(rows.size());
+        for (Song song : rows) {
+            items.add(counterService.applyPending(SongListing.of(song)));
+        }
+        return new Keyset.Page<>(items, nextCursor);
+    }
+
+    private Object sortValue(Song song, Keyset.SortKey sortKey) {
+        switch (sortKey) {
+            case VIEWS:
+                return song.getViews();
+            case LIKES:
+                return song.getLikes();
+            case DOWNLOADS:
+                return song.getDownloads();
+            default:
+                return song.getCreatedAt();
+        }
     }
 
     public Optional<Song> getSongById(Long id) {
-        return songRepository.findById(id);
+        return catalogCache.getSong(id).map(counterService::applyPending);
+    }
+
+    /**
+     * Songs by id in the order of the given ids; ids that no longer exist are skipped
+     */
+    public List<SongListing> getSongsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, SongListing> byId = new HashMap<>();
+        for (SongListing song : songRepository.findListingsByIdIn(ids)) {
+            byId.put(song.getId(), counterService.applyPending(song));
+        }
+        List<SongListing> songs = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            SongListing song = byId.get(id);
+            if (song != null) {
+                songs.add(song);
+            }
+        }
+        return songs;
     }
 
-    public Song createSingleTrack(String title, String artist, String featuredArtists,
-                                 String producer, MultipartFile coverArt, MultipartFile mp3File) throws Exception {
+    /**
+     * Creates a single from files spooled by an ingest job
+     * @param inTransaction Called with the saved song inside the inserting transaction
+     */
+    public Song createSingleTrack(String title, String artist, String featuredArtists, String producer,
+                                  Path coverArt, Path mp3File, Consumer<Song> inTransaction) throws Exception {
         // Store cover art (returns filename only)
         String coverArtFilename = fileStorageService.storeCoverArt(coverArt);
-
-        // Store MP3 file (returns filename only)
-        String mp3Filename = fileStorageService.storeSong(mp3File);
-
-        // Get full paths for metadata operations
-        String mp3FullPath = fileStorageService.getSongFullPath(mp3Filename);
         String coverArtFullPath = fileStorageService.getCoverArtFullPath(coverArtFilename);
+        String mp3Filename = fileStorageService.newSongFilename(mp3File.getFileName().toString());
+        Song saved;
+        try {
+            // Tag and store the MP3 in one pass from the spooled upload; the digest is the file's ETag
+            String mp3FullPath = fileStorageService.getSongFullPath(mp3Filename);
+            MP3MetadataService.TaggedFile tagged = mp3MetadataService.writeTagged(Files.newInputStream(mp3File),
+                    mp3FullPath, title, artist, featuredArtists, producer, null, null, null, coverArtFullPath);
+            if (tagged.getSeekIndex().getTotalFrames() == 0) {
+                throw new IOException("Not a valid MP3 file: no audio frames found");
+            }
+            // A song is never accepted without its seek index; HLS packaging reuses it
+            seekIndexService.save(mp3FullPath, tagged.getSeekIndex());
+            hlsService.segment(mp3FullPath);
 
-        // Set all metadata and embed cover art in a single operation (much faster)
-        mp3MetadataService.setAllMetadata(mp3FullPath, title, artist, featuredArtists, producer, null, 
-                                         null, null, coverArtFullPath);
-
-        // Create song - store only filenames in database for consistency
-        Song song = new Song(title, artist, featuredArtists, producer, null, mp3Filename, coverArtFilename);
-        return songRepository.save(song);
+            // Create song - store only filenames in database for consistency
+            Song song = new Song(title, artist, featuredArtists, producer, null, mp3Filename, coverArtFilename);
+            // Validators for conditional GETs are computed once here, after tagging
+            song.setFileEtag(tagged.getEtag());
+            song.setCoverArtEtag(fileStorageService.computeContentDigest(coverArtFullPath));
+            saved = transactionTemplate.execute(status -> {
+                Song inserted = songRepository.save(song);
+                inTransaction.accept(inserted);
+                return inserted;
+            });
+        } catch (Exception e) {
+            // Nothing was committed, so none of the stored files are referenced
+            seekIndexService.remove(mp3Filename);
+            hlsService.remove(mp3Filename);
+            fileStorageService.deleteSong(mp3Filename);
+            fileStorageService.deleteCoverArt(coverArtFilename);
+            throw e;
+        }
+        filePathIndex.register(saved);
+        catalogCache.evictSong(saved.getId());
+        suggestIndex.add(saved);
+        return saved;
     }
 
     public Song updateSong(Long id, String title, String artist, String featuredArtists, String producer) {
@@ -61,67 +185,88 @@ public class SongService {
             song.setArtist(artist);
             song.setFeaturedArtists(featuredArtists);
             song.setProducer(producer);
-            return songRepository.save(song);
+            song = songRepository.save(song);
+            catalogCache.evictSong(id);
+            suggestIndex.add(song);
+            return song;
         }
         return null;
     }
 
     public void deleteSong(Long id) {
+        songRepository.findById(id).ifPresent(song -> {
+            StoredFile file = filePathIndex.getSongById(id);
+            if (file != null) {
+                hotSegmentCache.invalidate(file.getName());
+                seekIndexService.remove(file.getName());
+                hlsService.remove(file.getName());
+            }
+            filePathIndex.remove(song);
+            counterService.remove(id);
+            trendingService.remove(id);
+            listenerService.removeSong(id);
+        });
         songRepository.deleteById(id);
+        catalogCache.evictSong(id);
+        suggestIndex.removeSong(id);
     }
 
-    public Song incrementViews(Long id) {
-        Optional<Song> songOpt = songRepository.findById(id);
-        if (songOpt.isPresent()) {
-            Song song = songOpt.get();
-            song.setViews(song.getViews() + 1);
-            return songRepository.save(song);
+    /**
+     * Records a play
+     * @param listener Client fingerprint for unique listener estimation, or null
+     */
+    public Song incrementViews(Long id, String listener) {
+        Song song = increment(id, SongCounter.VIEWS);
+        if (song != null) {
+            trendingService.recordPlay(song);
+            suggestIndex.recordPlay(song);
+            listenerService.recordListener(song, listener);
         }
-        return null;
+        return song;
     }
 
     public Song incrementLikes(Long id) {
-        Optional<Song> songOpt = songRepository.findById(id);
-        if (songOpt.isPresent()) {
-            Song song = songOpt.get();
-            song.setLikes(song.getLikes() + 1);
-            return songRepository.save(song);
-        }
-        return null;
+        return increment(id, SongCounter.LIKES);
     }
 
     public Song incrementDislikes(Long id) {
-        Optional<Song> songOpt = songRepository.findById(id);
-        if (songOpt.isPresent()) {
-            Song song = songOpt.get();
-            song.setDislikes(song.getDislikes() + 1);
-            return songRepository.save(song);
-        }
-        return null;
+        return increment(id, SongCounter.DISLIKES);
     }
 
-    public Song incrementDownloads(Long id) {
-        Optional<Song> songOpt = songRepository.findById(id);
-        if (songOpt.isPresent()) {
-            Song song = songOpt.get();
-            song.setDownloads(song.getDownloads() + 1);
-            return songRepository.save(song);
-        }
-        return null;
+    /**
+     * Counts a download without reading the song (the caller already has it)
+     */
+    public void recordDownload(Long id) {
+        counterService.increment(id, SongCounter.DOWNLOADS);
     }
 
     public Song incrementShares(Long id) {
         Optional<Song> songOpt = songRepository.findById(id);
         if (songOpt.isPresent()) {
             Song song = songOpt.get();
-            song.setShares(song.getShares() + 1);
+            counterService.increment(id, SongCounter.SHARES);
             
             // Generate a random share token if it doesn't exist
             if (song.getShareToken() == null || song.getShareToken().isEmpty()) {
                 song.setShareToken(generateShareToken());
+                song = songRepository.save(song);
+                catalogCache.evictSong(id);
+                catalogCache.evictShareToken(song.getShareToken());
             }
             
-            return songRepository.save(song);
+            return counterService.applyPending(song);
+        }
+        return null;
+    }
+
+    /**
+     * Records a counter event; the database is updated by the next batched flush
+     */
+    private Song increment(Long id, SongCounter counter) {
+        Optional<Song> songOpt = catalogCache.getSong(id);
+        if (songOpt.isPresent()) {
+            counterService.increment(id, counter);
+            return counterService.applyPending(songOpt.get());
         }
         return null;
     }
@@ -141,20 +286,18 @@ public class SongService {
      * Finds a song by its share token
      */
     public Optional<Song> getSongByShareToken(String shareToken) {
-        return songRepository.findByShareToken(shareToken);
+        return catalogCache.getSongByShareToken(shareToken).map(counterService::applyPending);
     }
 
-    public File getSongFile(Long id) {
-        Optional<Song> songOpt = songRepository.findById(id);
-        if (songOpt.isPresent()) {
-            Song song = songOpt.get();
-            return fileStorageService.getFile(song.getFilePath());
-        }
-        return null;
+    /**
+     * Title, artist and file columns of a song, for building a download response
+     */
+    public Optional<SongRepository.DownloadView> getDownloadView(Long id) {
+        return songRepository.findDownloadViewById(id);
     }
 
     public List<Song> getSongsByAlbum(Long albumId) {
-        return songRepository.findByAlbumId(albumId);
+        return counterService.applyPending(catalogCache.getAlbumSongs(albumId));
     }
 }
 
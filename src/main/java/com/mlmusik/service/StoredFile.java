@@ -0,0 +1,63 @@
+package com.mlmusik.service;
+
+import java.io.File;
+
+/**
+ * A resolved, validated upload on disk together with the attributes needed to serve it.
+ * Uploads are immutable once ingested, so length and modification time are captured once.
+ */
+public final class StoredFile {
+
+    private final File file;
+    private final long length;
+    private final long lastModified;
+    private final String etag;
+
+    public StoredFile(File file, long length, long lastModified, String etag) {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.etag = etag;
+    }
+
+    /**
+     * Stats the file once; returns null if it is missing or not a regular file
+     */
+    public static StoredFile of(File file, String etag) {
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        File absolute = file.getAbsoluteFile();
+        return new StoredFile(absolute, absolute.length(), absolute.lastModified(), etag);
+    }
+
+    public StoredFile withEtag(String etag) {
+        if (etag == null || etag.equals(this.etag)) {
+            return this;
+        }
+        return new StoredFile(file, length, lastModified, etag);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getName() {
+        return file.getName();
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Content digest persisted at ingest, or null for legacy rows and orphan files
+     */
+    public String getEtag() {
+        return etag;
+    }
+}
@@ -0,0 +1,11 @@
+package com.mlmusik.service;
+
+/**
+ * Scheduling class of an outgoing stream, decided by the endpoint that serves it. Playback is
+ * never paced and has first claim on the global egress budget; downloads only use what
+ * playback leaves over.
+ */
+public enum StreamPriority {
+    PLAYBACK,
+    DOWNLOAD
+}
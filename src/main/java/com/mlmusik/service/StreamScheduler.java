@@ -0,0 +1,202 @@
+package com.mlmusik.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bandwidth shaping for song downloads.
+ *
+ * Only the download class is paced: every download gets its own token bucket at a fixed
+ * per-connection rate and also draws from one global egress bucket, where it may only take
+ * tokens while a reserve is left. Playback is never paced (it keeps sendfile and holds no
+ * thread), but the bytes it sends are charged to the global bucket first, so a few download
+ * managers back off instead of starving real-time listeners.
+ *
+ * A shaped download is written by a thread that sleeps between chunks. Those bodies run on a
+ * dedicated bounded pool (see {@link #executeShaped}), never on the executor shared with other
+ * async responses, so throttled downloads cannot delay multipart ranges, cached heads or HLS.
+ * Playback is not paced by bitrate: it goes out by sendfile, which holds no thread to pace.
+ */
+@Service
+public class StreamScheduler {
+
+    /**
+     * Request attribute marking a request whose body is a shaped download
+     */
+    public static final String SHAPED_ATTRIBUTE = StreamScheduler.class.getName() + ".shaped";
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Value("${streaming.shaping.enabled:false}")
+    private boolean enabled;
+
+    @Value("${streaming.shaping.download-bytes-per-second:2097152}")
+    private long downloadBytesPerSecond;
+
+    @Value("${streaming.shaping.global-bytes-per-second:0}")
+    private long globalBytesPerSecond;
+
+    @Value("${streaming.shaping.playback-reserve:0.25}")
+    private double playbackReserve;
+
+    @Value("${streaming.shaping.max-downloads:32}")
+    private int maxDownloads;
+
+    @Value("${streaming.shaping.download-queue:256}")
+    private int downloadQueue;
+
+    private TokenBucket globalBucket;
+    private long downloadFloor;
+    private ThreadPoolExecutor downloadExecutor;
+
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+    private final LongAdder playbackBytes = new LongAdder();
+    private final LongAdder downloadBytes = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+    private final LongAdder overflowDownloads = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (globalBytesPerSecond > 0) {
+            globalBucket = new TokenBucket(globalBytesPerSecond, Math.max(globalBytesPerSecond, 4L * CHUNK_SIZE));
+            downloadFloor = Math.min((long) (globalBucket.getCapacity() * playbackReserve),
+                    globalBucket.getCapacity() - CHUNK_SIZE);
+        }
+        if (enabled) {
+            AtomicInteger threads = new AtomicInteger();
+            downloadExecutor = new ThreadPoolExecutor(maxDownloads, maxDownloads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(downloadQueue), task -> {
+                        Thread thread = new Thread(task, "shaped-download-" + threads.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            downloadExecutor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether streams of this class are paced (and so must be written through {@link #transfer})
+     */
+    public boolean isShaped(StreamPriority priority) {
+        return enabled && priority == StreamPriority.DOWNLOAD;
+    }
+
+    /**
+     * Charges bytes sent by an unpaced playback stream to the global budget, so downloads
+     * leave that much room to playback. Never waits.
+     */
+    public void recordPlayback(long bytes) {
+        playbackBytes.add(bytes);
+        if (enabled && globalBucket != null) {
+            globalBucket.consume(bytes);
+        }
+    }
+
+    /**
+     * Runs the body of a shaped download on the dedicated download pool
+     * @return false if shaping is off or the pool and its queue are full; the caller then runs
+     * the task on its own executor
+     */
+    public boolean executeShaped(Runnable task) {
+        if (downloadExecutor == null) {
+            return false;
+        }
+        try {
+            downloadExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            overflowDownloads.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Writes a region of a song to a download client, paced to the per-connection rate and the
+     * global budget
+     * @param song The resolved song file
+     * @param position First byte to send
+     * @param count Number of bytes to send
+     * @param outputStream The response body
+     */
+    public void transfer(StoredFile song, long position, long count, OutputStream outputStream) throws IOException {
+        TokenBucket connectionBucket = new TokenBucket(downloadBytesPerSecond,
+                Math.max(downloadBytesPerSecond, CHUNK_SIZE));
+        byte[] buffer = new byte[CHUNK_SIZE];
+
+        activeDownloads.incrementAndGet();
+        try (FileChannel channel = FileChannel.open(song.getFile().toPath(), StandardOpenOption.READ)) {
+            long end = position + count;
+            while (position < end) {
+                int chunk = (int) Math.min(CHUNK_SIZE, end - position);
+                acquire(connectionBucket, chunk, 0);
+                if (globalBucket != null) {
+                    acquire(globalBucket, chunk, downloadFloor);
+                }
+                int read = channel.read(ByteBuffer.wrap(buffer, 0, chunk), position);
+                if (read <= 0) {
+                    // File was truncated underneath us
+                    break;
+                }
+                outputStream.write(buffer, 0, read);
+                position += read;
+                downloadBytes.add(read);
+            }
+        } finally {
+            activeDownloads.decrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("activeDownloadStreams", activeDownloads.get());
+        stats.put("queuedDownloads", downloadExecutor != null ? downloadExecutor.getQueue().size() : 0);
+        stats.put("overflowDownloads", overflowDownloads.sum());
+        stats.put("playbackBytes", playbackBytes.sum());
+        stats.put("downloadBytes", downloadBytes.sum());
+        stats.put("globalBytesPerSecond", globalBytesPerSecond);
+        stats.put("throttledMillis", TimeUnit.NANOSECONDS.toMillis(throttledNanos.sum()));
+        return stats;
+    }
+
+    private void acquire(TokenBucket bucket, long bytes, long floor) throws IOException {
+        long wait;
+        while ((wait = bucket.tryAcquire(bytes, floor)) > 0) {
+            throttledNanos.add(wait);
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Stream interrupted while throttled");
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.mlmusik.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mlmusik.model.Album;
+import com.mlmusik.model.Song;
+import com.mlmusik.repository.AlbumRepository;
+import com.mlmusik.repository.SongRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory prefix index for search-as-you-type over song titles, artists, featured artists,
+ * producers and album titles.
+ *
+ * Texts are lower-cased, accent-folded and split into words; every word start of every field
+ * becomes a key in a sorted map, so "wee" finds "The Weeknd" and "beyonce" finds "Beyoncé".
+ * The ranked top list of a prefix is computed once from the key range and then kept in a
+ * bounded cache: popularity only grows, so re-offering a song to its prefixes on every play
+ * keeps those lists exact, and uploads, edits and deletes drop the lists they affect. A
+ * lookup is then a hash probe; only long, selective prefixes scan the key range directly.
+ * Built at startup and kept current on upload, update and delete.
+ */
+@Service
+public class SuggestIndex {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MAX_KEY_LENGTH = 48;
+    // Prefixes up to this length have cached top lists; longer ones match few keys
+    private static final int CACHED_PREFIX_LENGTH = 12;
+    public static final int MAX_SUGGESTIONS = 50;
+
+    /**
+     * A song or album that can be suggested, with its display text and popularity
+     */
+    public static final class Suggestion {
+        private final String type;
+        private final long id;
+        private final String title;
+        private final String artist;
+        private final AtomicLong popularity;
+        private final List<String> keys;
+
+        private Suggestion(String type, long id, String title, String artist, long popularity, List<String> keys) {
+            this.type = type;
+            this.id = id;
+            this.title = title;
+            this.artist = artist;
+            this.popularity = new AtomicLong(popularity);
+            this.keys = keys;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getArtist() {
+            return artist;
+        }
+
+        public long getPopularity() {
+            return popularity.get();
+        }
+    }
+
+    @Autowired
+    private SongRepository songRepository;
+
+    @Autowired
+    private AlbumRepository albumRepository;
+
+    @Value("${search.suggest.max-cached-prefixes:100000}")
+    private long maxCachedPrefixes;
+
+    private final ConcurrentSkipListMap<String, Suggestion[]> keys = new ConcurrentSkipListMap<>();
+    private final Map<String, Suggestion> entries = new ConcurrentHashMap<>();
+    private Cache<String, Ranked[]> tops;
+
+    @PostConstruct
+    public void init() {
+        tops = Caffeine.newBuilder().maximumSize(maxCachedPrefixes).build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(5)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        for (SongRepository.SuggestView song : songRepository.findAllSuggestViewsBy()) {
+            addSong(song.getId(), song.getTitle(), song.getArtist(), song.getFeaturedArtists(), song.getProducer(),
+                    orZero(song.getViews()) + orZero(song.getLikes()));
+        }
+        for (AlbumRepository.AlbumSummary album : albumRepository.findAllSummariesBy()) {
+            addAlbum(album.getId(), album.getTitle(), album.getArtist(), orZero(album.getTotalViews()));
+        }
+        System.out.println("Suggest index ready: " + entries.size() + " entries, " + keys.size() + " keys in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Most popular songs and albums with a word starting with the query
+     * @param limit Maximum number of suggestions (at most MAX_SUGGESTIONS)
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        if (prefix.length() > MAX_KEY_LENGTH) {
+            prefix = prefix.substring(0, MAX_KEY_LENGTH);
+        }
+        Ranked[] ranked = prefix.length() <= CACHED_PREFIX_LENGTH ? tops.get(prefix, this::scan) : scan(prefix);
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(limit, ranked.length));
+        for (int i = 0; i < ranked.length && i < limit; i++) {
+            suggestions.add(ranked[i].suggestion);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Indexes a new or changed song (replacing its previous texts)
+     */
+    public void add(Song song) {
+        addSong(song.getId(), song.getTitle(), song.getArtist(), song.getFeaturedArtists(), song.getProducer(),
+                orZero(song.getViews()) + orZero(song.getLikes()));
+    }
+
+    /**
+     * Indexes a new or changed album (replacing its previous texts)
+     */
+    public void add(Album album) {
+        addAlbum(album.getId(), album.getTitle(), album.getArtist(), orZero(album.getTotalViews()));
+    }
+
+    public void removeSong(Long songId) {
+        remove("song:" + songId);
+    }
+
+    public void removeAlbum(Long albumId) {
+        remove("album:" + albumId);
+    }
+
+    /**
+     * Raises the popularity of a song and its album by one play
+     */
+    public void recordPlay(Song song) {
+        played(entries.get("song:" + song.getId()));
+        if (song.getAlbum() != null) {
+            played(entries.get("album:" + song.getAlbum().getId()));
+        }
+    }
+
+    /**
+     * Lower case without accents, with runs of punctuation and spaces collapsed to one space
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(folded.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private void addSong(Long id, String title, String artist, String featuredArtists, String producer, long popularity) {
+        if (id == null) {
+            return;
+        }
+        Set<String> songKeys = new LinkedHashSet<>();
+        collectKeys(title, songKeys);
+        collectKeys(artist, songKeys);
+        collectKeys(featuredArtists, songKeys);
+        collectKeys(producer, songKeys);
+        put(new Suggestion("song", id, title, artist, popularity, new ArrayList<>(songKeys)));
+    }
+
+    private void addAlbum(Long id, String title, String artist, long popularity) {
+        if (id == null) {
+            return;
+        }
+        Set<String> albumKeys = new LinkedHashSet<>();
+        collectKeys(title, albumKeys);
+        put(new Suggestion("album", id, title, artist, popularity, new ArrayList<>(albumKeys)));
+    }
+
+    /**
+     * One key per word start: "the weeknd" gives "the weeknd" and "weeknd"
+     */
+    private static void collectKeys(String text, Set<String> target) {
+        String normalized = normalize(text);
+        int start = 0;
+        while (start < normalized.length()) {
+            String key = normalized.substring(start);
+            target.add(key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+            int space = normalized.indexOf(' ', start);
+            if (space < 0) {
+                break;
+            }
+            start = space + 1;
+        }
+    }
+
+    private void put(Suggestion suggestion) {
+        String entryKey = suggestion.type + ":" + suggestion.id;
+        Suggestion previous = entries.put(entryKey, suggestion);
+        if (previous != null) {
+            // Keep plays recorded since the last build
+            suggestion.popularity.accumulateAndGet(previous.popularity.get(), Math::max);
+            unlink(previous);
+        }
+        for (String key : suggestion.keys) {
+            keys.compute(key, (k, postings) -> {
+                if (postings == null) {
+                    return new Suggestion[]{suggestion};
+                }
+                Suggestion[] grown = Arrays.copyOf(postings, postings.length + 1);
+                grown[postings.length] = suggestion;
+                return grown;
+            });
+        }
+        // Dropped after the keys are in place, so a list computed concurrently cannot miss them
+        tops.invalidateAll(cachedPrefixes(suggestion));
+    }
+
+    private void remove(String entryKey) {
+        Suggestion previous = entries.remove(entryKey);
+        if (previous != null) {
+            unlink(previous);
+        }
+    }
+
+    private void unlink(Suggestion suggestion) {
+        for (String key : suggestion.keys) {
+            keys.computeIfPresent(key, (k, postings) -> {
+                Suggestion[] kept = Arrays.stream(postings).filter(p -> p != suggestion).toArray(Suggestion[]::new);
+                return kept.length > 0 ? kept : null;
+            });
+        }
+        tops.invalidateAll(cachedPrefixes(suggestion));
+    }
+
+    /**
+     * Counts a play and moves the suggestion up (or into) the cached lists of its prefixes
+     */
+    private void played(Suggestion suggestion) {
+        if (suggestion == null) {
+            return;
+        }
+        long popularity = suggestion.popularity.incrementAndGet();
+        for (String prefix : cachedPrefixes(suggestion)) {
+            tops.asMap().computeIfPresent(prefix, (p, ranked) -> offer(ranked, new Ranked(suggestion, popularity)));
+        }
+    }
+
+    /**
+     * A top list with the candidate inserted or re-ranked, still sorted and bounded
+     */
+    private static Ranked[] offer(Ranked[] ranked, Ranked candidate) {
+        List<Ranked> next = new ArrayList<>(ranked.length + 1);
+        for (Ranked entry : ranked) {
+            if (entry.suggestion != candidate.suggestion) {
+                next.add(entry);
+            }
+        }
+        int position = 0;
+        while (position < next.size() && next.get(position).popularity >= candidate.popularity) {
+            position++;
+        }
+        if (position >= MAX_SUGGESTIONS) {
+            return ranked;
+        }
+        next.add(position, candidate);
+        if (next.size() > MAX_SUGGESTIONS) {
+            next.remove(next.size() - 1);
+        }
+        return next.toArray(new Ranked[0]);
+    }
+
+    private static Set<String> cachedPrefixes(Suggestion suggestion) {
+        Set<String> prefixes = new HashSet<>();
+        for (String key : suggestion.keys) {
+            for (int length = 1; length <= Math.min(key.length(), CACHED_PREFIX_LENGTH); length++) {
+                prefixes.add(key.substring(0, length));
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * Top list of a prefix computed from its key range with a bounded heap
+     */
+    private Ranked[] scan(String prefix) {
+        NavigableMap<String, Suggestion[]> range = keys.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        // Popularity is read once per candidate so concurrent plays cannot reorder the heap
+        PriorityQueue<Ranked> heap = new PriorityQueue<>((a, b) -> Long.compare(a.popularity, b.popularity));
+        Set<Suggestion> seen = new HashSet<>();
+        for (Suggestion[] postings : range.values()) {
+            for (Suggestion suggestion : postings) {
+                if (!seen.add(suggestion)) {
+                    continue;
+                }
+                long popularity = suggestion.popularity.get();
+                if (heap.size() < MAX_SUGGESTIONS) {
+                    heap.add(new Ranked(suggestion, popularity));
+                } else if (popularity > heap.peek().popularity) {
+                    heap.poll();
+                    heap.add(new Ranked(suggestion, popularity));
+                }
+            }
+        }
+        Ranked[] ranked = new Ranked[heap.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = heap.poll();
+        }
+        return ranked;
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0;
+    }
+
+    private static final class Ranked {
+        private final Suggestion suggestion;
+        private final long popularity;
+
+        private Ranked(Suggestion suggestion, long popularity) {
+            this.suggestion = suggestion;
+            this.popularity = popularity;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.mlmusik.service;
+
+/**
+ * Token bucket measured in bytes. Callers ask for tokens and sleep for the returned delay
+ * before asking again, so no thread blocks while holding the bucket's lock.
+ */
+final class TokenBucket {
+
+    private final double bytesPerNano;
+    private final long capacity;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(long bytesPerSecond, long capacity) {
+        this.bytesPerNano = bytesPerSecond / 1_000_000_000d;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Takes bytes tokens without waiting; the bucket may go into debt of up to its capacity,
+     * which other callers then wait out
+     */
+    synchronized void consume(long bytes) {
+        refill();
+        tokens = Math.max(-capacity, tokens - bytes);
+    }
+
+    /**
+     * Takes bytes tokens if at least floor tokens would remain afterwards
+     * @return 0 if the tokens were taken, otherwise nanoseconds to wait before retrying
+     */
+    synchronized long tryAcquire(long bytes, long floor) {
+        refill();
+        double missing = bytes + floor - tokens;
+        if (missing <= 0) {
+            tokens -= bytes;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil(missing / bytesPerNano));
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * bytesPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,518 @@
+package com.mlmusik.service;
+
+import com.mlmusik.model.Song;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-windowed play counts and top-K rankings of songs and albums.
+ *
+ * Every song and album that was played recently has two ring buffers of primitive counters: one
+ * per minute for the last hour and one per hour for the last week, with running window sums.
+ * Old slots are cleared lazily as time moves on. Each play offers the song and its album to a
+ * bounded candidate ranking per window, so the scheduled refresh only rescores those candidates
+ * (counts decay between plays) and a trending request reads a prepared snapshot. A slower sweep
+ * rescans every buffer to forget idle songs and catch candidates that only rose as others decayed.
+ * Song buffers are checkpointed to disk periodically and on shutdown, and reloaded at startup.
+ */
+@Service
+public class TrendingService {
+
+    private static final int CHECKPOINT_MAGIC = 0x54524E44; // "TRND"
+    private static final int MINUTE_SLOTS = 60;
+    private static final int HOUR_SLOTS = 24 * 7;
+    // How long a removed song stays tombstoned; only plays already in flight can race its removal
+    private static final long TOMBSTONE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Supported ranking windows
+     */
+    public enum Window {
+        HOUR("1h"),
+        DAY("24h"),
+        WEEK("7d");
+
+        private final String label;
+
+        Window(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Parses "1h", "24h" or "7d"; null if the value is not a supported window
+         */
+        public static Window fromLabel(String value) {
+            for (Window window : values()) {
+                if (window.label.equalsIgnoreCase(value)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A ranked song or album id with its play count in the window
+     */
+    public static final class Entry {
+        private final long id;
+        private final long plays;
+
+        private Entry(long id, long plays) {
+            this.id = id;
+            this.plays = plays;
+        }
+
+        private static final Comparator<Entry> BY_PLAYS =
+                Comparator.comparingLong((Entry entry) -> entry.plays).thenComparingLong(entry -> entry.id);
+
+        public long getId() {
+            return id;
+        }
+
+        public long getPlays() {
+            return plays;
+        }
+    }
+
+    @Value("${file.upload.state-dir:./uploads/state}")
+    private String stateDir;
+
+    @Value("${trending.top-k:200}")
+    private int topK;
+
+    private final Map<Long, Buckets> songs = new ConcurrentHashMap<>();
+    private final Map<Long, Buckets> albums = new ConcurrentHashMap<>();
+    // Removal time of recently deleted songs, so a racing play cannot recreate their buffers
+    private final Map<Long, Long> removed = new ConcurrentHashMap<>();
+    private final Map<Window, Ranking> songRankings = new EnumMap<>(Window.class);
+    private final Map<Window, Ranking> albumRankings = new EnumMap<>(Window.class);
+    private volatile Map<Window, List<Entry>> topSongs = emptyRankings();
+    private volatile Map<Window, List<Entry>> topAlbums = emptyRankings();
+
+    @PostConstruct
+    public void restore() {
+        for (Window window : Window.values()) {
+            songRankings.put(window, new Ranking(window, songs));
+            albumRankings.put(window, new Ranking(window, albums));
+        }
+        Path checkpoint = checkpointPath();
+        if (!Files.isRegularFile(checkpoint)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a trending checkpoint");
+            }
+            int count = in.readInt();
+            long minute = currentMinute();
+            for (int i = 0; i < count; i++) {
+                long songId = in.readLong();
+                Buckets buckets = Buckets.read(in);
+                songs.put(songId, buckets);
+                if (buckets.albumId >= 0) {
+                    albums.computeIfAbsent(buckets.albumId, id -> new Buckets(-1)).merge(buckets, minute, 1);
+                }
+            }
+            sweep();
+            refresh();
+            System.out.println("Trending state restored for " + count + " songs");
+        } catch (IOException e) {
+            System.err.println("Could not restore trending state: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts one play of a song and its album, and offers both to the candidate rankings
+     */
+    public void recordPlay(Song song) {
+        long albumId = song.getAlbum() != null ? song.getAlbum().getId() : -1;
+        long minute = currentMinute();
+        long[][] sums = new long[2][];
+        // Atomic with remove(): a play either lands before the removal (and is subtracted from the
+        // album with the song) or sees the tombstone and is dropped
+        songs.compute(song.getId(), (id, buckets) -> {
+            if (removed.containsKey(id)) {
+                return null;
+            }
+            if (buckets == null) {
+                buckets = new Buckets(albumId);
+            }
+            sums[0] = buckets.add(minute);
+            if (albumId >= 0) {
+                albums.compute(albumId, (album, albumBuckets) -> {
+                    if (albumBuckets == null) {
+                        albumBuckets = new Buckets(-1);
+                    }
+                    sums[1] = albumBuckets.add(minute);
+                    return albumBuckets;
+                });
+            }
+            return buckets;
+        });
+        for (Window window : Window.values()) {
+            if (sums[0] != null) {
+                songRankings.get(window).offer(song.getId(), sums[0][window.ordinal()]);
+            }
+            if (sums[1] != null) {
+                albumRankings.get(window).offer(albumId, sums[1][window.ordinal()]);
+            }
+        }
+    }
+
+    /**
+     * Most played songs in a window, best first
+     * @param limit Maximum number of entries (at most trending.top-k)
+     */
+    public List<Entry> getTopSongs(Window window, int limit) {
+        List<Entry> ranking = topSongs.get(window);
+        return ranking.subList(0, Math.min(Math.max(limit, 0), ranking.size()));
+    }
+
+    /**
+     * Most played albums in a window (sum of their songs' plays), best first
+     */
+    public List<Entry> getTopAlbums(Window window, int limit) {
+        List<Entry> ranking = topAlbums.get(window);
+        return ranking.subList(0, Math.min(Math.max(limit, 0), ranking.size()));
+    }
+
+    /**
+     * Drops a deleted song from the rankings and takes its plays out of its album's counts
+     */
+    public void remove(Long songId) {
+        removed.put(songId, System.currentTimeMillis());
+        long minute = currentMinute();
+        songs.computeIfPresent(songId, (id, buckets) -> {
+            if (buckets.albumId >= 0) {
+                albums.computeIfPresent(buckets.albumId, (album, albumBuckets) -> {
+                    albumBuckets.merge(buckets, minute, -1);
+                    return albumBuckets;
+                });
+            }
+            return null;
+        });
+        for (Ranking ranking : songRankings.values()) {
+            ranking.remove(songId);
+        }
+    }
+
+    /**
+     * Publishes the top-K lists after rescoring the candidates of each window
+     */
+    @Scheduled(fixedDelayString = "${trending.refresh-interval-ms:10000}")
+    public void refresh() {
+        long minute = currentMinute();
+        Map<Window, List<Entry>> nextSongs = new EnumMap<>(Window.class);
+        Map<Window, List<Entry>> nextAlbums = new EnumMap<>(Window.class);
+        for (Window window : Window.values()) {
+            nextSongs.put(window, songRankings.get(window).rescore(minute));
+            nextAlbums.put(window, albumRankings.get(window).rescore(minute));
+        }
+        topSongs = nextSongs;
+        topAlbums = nextAlbums;
+    }
+
+    /**
+     * Full pass over all buffers: forgets songs and albums without a play for a week, expires
+     * tombstones and offers every current count to the rankings, so a song that was not a
+     * candidate at its last play can enter once the candidates above it have decayed
+     */
+    @Scheduled(fixedDelayString = "${trending.sweep-interval-ms:600000}")
+    public void sweep() {
+        long minute = currentMinute();
+        sweep(songs, songRankings, minute);
+        sweep(albums, albumRankings, minute);
+        long expired = System.currentTimeMillis() - TOMBSTONE_MILLIS;
+        removed.values().removeIf(time -> time < expired);
+    }
+
+    private void sweep(Map<Long, Buckets> buffers, Map<Window, Ranking> rankings, long minute) {
+        for (Long id : buffers.keySet()) {
+            long[][] sums = new long[1][];
+            buffers.computeIfPresent(id, (key, buckets) -> {
+                sums[0] = buckets.sums(minute);
+                return sums[0][Window.WEEK.ordinal()] == 0 ? null : buckets;
+            });
+            if (sums[0] != null) {
+                for (Window window : Window.values()) {
+                    rankings.get(window).offer(id, sums[0][window.ordinal()]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all ring buffers to the state directory (atomically replacing the previous checkpoint)
+     */
+    @Scheduled(fixedDelayString = "${trending.checkpoint-interval-ms:60000}")
+    @PreDestroy
+    public synchronized void checkpoint() {
+        Path target = checkpointPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            List<Map.Entry<Long, Buckets>> snapshot = new ArrayList<>(songs.entrySet());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<Long, Buckets> song : snapshot) {
+                    out.writeLong(song.getKey());
+                    song.getValue().write(out);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not checkpoint trending state: " + e.getMessage());
+        }
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    private Path checkpointPath() {
+        return Paths.get(stateDir, "trending.bin");
+    }
+
+    private static long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    }
+
+    private static Map<Window, List<Entry>> emptyRankings() {
+        Map<Window, List<Entry>> rankings = new EnumMap<>(Window.class);
+        for (Window window : Window.values()) {
+            rankings.put(window, List.of());
+        }
+        return rankings;
+    }
+
+    /**
+     * Bounded candidate ranking of one window: at most twice top-K ids with the count they had
+     * when last offered or rescored, ordered by that count. A new id only gets in by beating the
+     * lowest candidate.
+     */
+    private final class Ranking {
+        private final Window window;
+        private final Map<Long, Buckets> buffers;
+        private final TreeSet<Entry> order = new TreeSet<>(Entry.BY_PLAYS);
+        private final Map<Long, Entry> members = new HashMap<>();
+
+        private Ranking(Window window, Map<Long, Buckets> buffers) {
+            this.window = window;
+            this.buffers = buffers;
+        }
+
+        private synchronized void offer(long id, long plays) {
+            Entry current = members.remove(id);
+            if (current != null) {
+                order.remove(current);
+            } else if (members.size() >= 2 * topK) {
+                Entry lowest = order.first();
+                if (plays <= lowest.plays) {
+                    return;
+                }
+                order.pollFirst();
+                members.remove(lowest.id);
+            }
+            if (plays > 0) {
+                Entry entry = new Entry(id, plays);
+                order.add(entry);
+                members.put(id, entry);
+            }
+        }
+
+        private synchronized void remove(long id) {
+            Entry current = members.remove(id);
+            if (current != null) {
+                order.remove(current);
+            }
+        }
+
+        /**
+         * Updates every candidate to its current count and returns the best top-K
+         */
+        private synchronized List<Entry> rescore(long minute) {
+            List<Long> ids = new ArrayList<>(members.keySet());
+            order.clear();
+            members.clear();
+            for (Long id : ids) {
+                Buckets buckets = buffers.get(id);
+                long plays = buckets != null ? buckets.sums(minute)[window.ordinal()] : 0;
+                if (plays > 0) {
+                    Entry entry = new Entry(id, plays);
+                    order.add(entry);
+                    members.put(id, entry);
+                }
+            }
+            List<Entry> ranking = new ArrayList<>(Math.min(topK, order.size()));
+            for (Entry entry : order.descendingSet()) {
+                if (ranking.size() == topK) {
+                    break;
+                }
+                ranking.add(entry);
+            }
+            return Collections.unmodifiableList(ranking);
+        }
+    }
+
+    /**
+     * Ring buffers of one song or album: plays per minute (last hour) and per hour (last week),
+     * with the sum of each window kept up to date as slots fill and expire
+     */
+    private static final class Buckets {
+        private final long albumId;
+        private final int[] minutes = new int[MINUTE_SLOTS];
+        private final int[] hours = new int[HOUR_SLOTS];
+        private long lastMinute;
+        private long lastHour;
+        private final long[] sums = new long[Window.values().length];
+
+        private Buckets(long albumId) {
+            this.albumId = albumId;
+        }
+
+        /**
+         * Counts one play
+         * @return Plays in each window including this one, indexed by {@link Window#ordinal()}
+         */
+        private synchronized long[] add(long minute) {
+            advance(minute);
+            minutes[(int) (minute % MINUTE_SLOTS)]++;
+            hours[(int) ((minute / 60) % HOUR_SLOTS)]++;
+            for (int i = 0; i < sums.length; i++) {
+                sums[i]++;
+            }
+            return sums.clone();
+        }
+
+        /**
+         * Plays in each window, indexed by {@link Window#ordinal()}
+         */
+        private synchronized long[] sums(long minute) {
+            advance(minute);
+            return sums.clone();
+        }
+
+        /**
+         * Adds (sign 1) or subtracts (sign -1) the slots of another buffer, aligned at minute
+         */
+        private void merge(Buckets other, long minute, int sign) {
+            synchronized (this) {
+                advance(minute);
+                synchronized (other) {
+                    other.advance(minute);
+                    for (int i = 0; i < MINUTE_SLOTS; i++) {
+                        minutes[i] = Math.max(0, minutes[i] + sign * other.minutes[i]);
+                    }
+                    for (int i = 0; i < HOUR_SLOTS; i++) {
+                        hours[i] = Math.max(0, hours[i] + sign * other.hours[i]);
+                    }
+                }
+                recompute();
+            }
+        }
+
+        /**
+         * Clears the slots that have fallen out of the buffers since the last update, taking
+         * them out of the window sums
+         */
+        private void advance(long minute) {
+            if (minute - lastMinute >= MINUTE_SLOTS) {
+                Arrays.fill(minutes, 0);
+                sums[Window.HOUR.ordinal()] = 0;
+            } else {
+                for (long m = lastMinute + 1; m <= minute; m++) {
+                    sums[Window.HOUR.ordinal()] -= minutes[(int) (m % MINUTE_SLOTS)];
+                    minutes[(int) (m % MINUTE_SLOTS)] = 0;
+                }
+            }
+            lastMinute = Math.max(lastMinute, minute);
+            long hour = minute / 60;
+            if (hour - lastHour >= HOUR_SLOTS) {
+                Arrays.fill(hours, 0);
+                sums[Window.DAY.ordinal()] = 0;
+                sums[Window.WEEK.ordinal()] = 0;
+            } else {
+                for (long h = lastHour + 1; h <= hour; h++) {
+                    // The hour 24 back leaves the day window; the slot reused for h leaves the week
+                    sums[Window.DAY.ordinal()] -= hours[(int) ((h - 24) % HOUR_SLOTS)];
+                    sums[Window.WEEK.ordinal()] -= hours[(int) (h % HOUR_SLOTS)];
+                    hours[(int) (h % HOUR_SLOTS)] = 0;
+                }
+            }
+            lastHour = Math.max(lastHour, hour);
+        }
+
+        /**
+         * Window sums from the slots, relative to the last update
+         */
+        private void recompute() {
+            Arrays.fill(sums, 0);
+            for (int count : minutes) {
+                sums[Window.HOUR.ordinal()] += count;
+            }
+            for (int i = 0; i < HOUR_SLOTS; i++) {
+                int count = hours[(int) ((lastHour - i) % HOUR_SLOTS)];
+                if (i < 24) {
+                    sums[Window.DAY.ordinal()] += count;
+                }
+                sums[Window.WEEK.ordinal()] += count;
+            }
+        }
+
+        private synchronized void write(DataOutputStream out) throws IOException {
+            out.writeLong(albumId);
+            out.writeLong(lastMinute);
+            out.writeLong(lastHour);
+            for (int count : minutes) {
+                out.writeInt(count);
+            }
+            for (int count : hours) {
+                out.writeInt(count);
+            }
+        }
+
+        private static Buckets read(DataInputStream in) throws IOException {
+            Buckets buckets = new Buckets(in.readLong());
+            buckets.lastMinute = in.readLong();
+            buckets.lastHour = in.readLong();
+            for (int i = 0; i < MINUTE_SLOTS; i++) {
+                buckets.minutes[i] = in.readInt();
+            }
+            for (int i = 0; i < HOUR_SLOTS; i++) {
+                buckets.hours[i] = in.readInt();
+            }
+            buckets.recompute();
+            return buckets;
+        }
+    }
+}
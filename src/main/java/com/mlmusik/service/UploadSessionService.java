@@ -0,0 +1,268 @@
+package com.mlmusik.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mlmusik.model.AlbumImport;
+import com.mlmusik.model.IngestJob;
+import com.mlmusik.model.UploadPart;
+import com.mlmusik.model.UploadRequest;
+import com.mlmusik.model.UploadSession;
+import com.mlmusik.repository.UploadPartRepository;
+import com.mlmusik.repository.UploadSessionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resumable uploads of singles and albums.
+ *
+ * Creating an upload preallocates one file per part (cover art, then the tracks) in a spool
+ * directory. Chunks are written straight into their part with positional FileChannel writes
+ * and must start at the part's received offset, which only moves forward once the bytes are
+ * written (also for a chunk cut off by a dropped connection), so a client resumes by asking
+ * for the offsets and sending the rest. Finalizing hands the spool directory to an ingest
+ * job as it is: the files are not copied again before tagging. Uploads not finalized within
+ * the TTL are deleted.
+ */
+@Service
+public class UploadSessionService {
+
+    private static final int CHUNK_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * A chunk did not start at the received offset of its part
+     */
+    public static class OffsetMismatchException extends IllegalStateException {
+        private final long received;
+
+        public OffsetMismatchException(long received) {
+            super("Chunk must start at offset " + received);
+            this.received = received;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+    }
+
+    @Autowired
+    private UploadSessionRepository sessionRepository;
+
+    @Autowired
+    private UploadPartRepository partRepository;
+
+    @Autowired
+    private IngestJobService ingestJobService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${ingest.jobs.spool-dir:./uploads/spool}")
+    private String spoolDir;
+
+    @Value("${uploads.max-file-bytes:1073741824}")
+    private long maxFileBytes;
+
+    @Value("${uploads.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    public Optional<UploadSession> getSession(String id) {
+        return sessionRepository.findById(id);
+    }
+
+    /**
+     * Creates an upload and preallocates its files
+     * @throws IllegalArgumentException if the request is incomplete or a file size is out of range
+     */
+    public UploadSession create(UploadRequest request) throws IOException {
+        IngestJob.Type type = parseType(request.getType());
+        validate(request, type);
+
+        String id = UUID.randomUUID().toString();
+        Path dir = Files.createDirectories(Paths.get(spoolDir).resolve("upload-" + id));
+        try {
+            AlbumImport manifest = new AlbumImport();
+            manifest.setTitle(request.getTitle());
+            manifest.setArtist(request.getArtist());
+            manifest.setCoverArt("cover" + IngestJobService.extension(request.getCoverArtFilename(), ".jpg"));
+            for (int i = 0; i < request.getTracks().size(); i++) {
+                UploadRequest.Track track = request.getTracks().get(i);
+                manifest.getTracks().add(IngestJobService.track(track.getTitle(),
+                        track.getArtist() != null ? track.getArtist() : request.getArtist(),
+                        track.getFeaturedArtists(), track.getProducer(), track.getTrackNumber(),
+                        "track-" + (i + 1) + IngestJobService.extension(track.getFilename(), ".mp3")));
+            }
+
+            UploadSession session = new UploadSession(id, type, dir.toString(), objectMapper.writeValueAsString(manifest));
+            addPart(session, manifest.getCoverArt(), request.getCoverArtSize());
+            for (int i = 0; i < request.getTracks().size(); i++) {
+                addPart(session, manifest.getTracks().get(i).getFile(), request.getTracks().get(i).getSize());
+            }
+            return sessionRepository.save(session);
+        } catch (IOException | RuntimeException e) {
+            deleteSpool(dir);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a chunk of a part, starting at the given offset
+     * @return The received offset of the part after the chunk
+     * @throws NoSuchElementException if the upload or part does not exist
+     * @throws OffsetMismatchException if the offset is not the part's received offset
+     * @throws IllegalStateException if the upload was finalized
+     * @throws IllegalArgumentException if the chunk runs past the declared size of the part
+     */
+    public long writeChunk(String sessionId, int partIndex, long offset, InputStream body) throws IOException {
+        UploadSession session = sessionRepository.findById(sessionId)
+                .orElseThrow(() -> new NoSuchElementException("Upload not found"));
+        if (session.getStatus() != UploadSession.Status.OPEN) {
+            throw new IllegalStateException("Upload was already finalized");
+        }
+        if (partIndex < 0 || partIndex >= session.getParts().size()) {
+            throw new NoSuchElementException("Upload file " + partIndex + " not found");
+        }
+        UploadPart part = session.getParts().get(partIndex);
+        if (offset != part.getReceived()) {
+            throw new OffsetMismatchException(part.getReceived());
+        }
+
+        long position = offset;
+        try (FileChannel channel = FileChannel.open(Paths.get(session.getSpoolDir()).resolve(part.getSpoolFile()),
+                StandardOpenOption.WRITE)) {
+            byte[] chunk = new byte[CHUNK_BUFFER_SIZE];
+            int read;
+            while ((read = body.read(chunk)) > 0) {
+                if (position + read > part.getSize()) {
+                    throw new IllegalArgumentException("Chunk runs past the declared size of " + part.getSize() + " bytes");
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, read);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+        } finally {
+            // Bytes written before a failure still count, so a resumed upload continues after them
+            if (position > offset && partRepository.advance(part.getId(), offset, position) == 0) {
+                UploadPart current = partRepository.findById(part.getId()).orElse(part);
+                throw new OffsetMismatchException(current.getReceived());
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Queues the ingest job of a complete upload; finalizing again returns the same job
+     * @throws NoSuchElementException if the upload does not exist
+     * @throws IllegalStateException if a file is not complete yet
+     */
+    public synchronized IngestJob finalizeUpload(String sessionId) throws IOException {
+        UploadSession session = sessionRepository.findById(sessionId)
+                .orElseThrow(() -> new NoSuchElementException("Upload not found"));
+        if (session.getStatus() == UploadSession.Status.FINALIZED) {
+            return ingestJobService.getJob(session.getJobId())
+                    .orElseThrow(() -> new NoSuchElementException("Job of the upload not found"));
+        }
+        for (UploadPart part : session.getParts()) {
+            if (!part.isComplete()) {
+                throw new IllegalStateException("Upload file " + part.getPartIndex() + " is incomplete: "
+                        + part.getReceived() + " of " + part.getSize() + " bytes received");
+            }
+        }
+        AlbumImport manifest = objectMapper.readValue(session.getManifest(), AlbumImport.class);
+        IngestJob job = ingestJobService.submitSpooled(session.getType(), Paths.get(session.getSpoolDir()), manifest);
+        session.setStatus(UploadSession.Status.FINALIZED);
+        session.setJobId(job.getId());
+        sessionRepository.save(session);
+        return job;
+    }
+
+    /**
+     * Deletes uploads older than the TTL; files of open ones are deleted with them (those of
+     * finalized ones belong to their job)
+     */
+    @Scheduled(fixedDelayString = "${uploads.cleanup-interval-ms:3600000}")
+    public void expire() {
+        try {
+            for (UploadSession session : sessionRepository.findByCreatedAtBefore(
+                    LocalDateTime.now().minusHours(sessionTtlHours))) {
+                if (session.getStatus() == UploadSession.Status.OPEN) {
+                    deleteSpool(Paths.get(session.getSpoolDir()));
+                }
+                sessionRepository.delete(session);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Could not expire uploads: " + e.getMessage());
+        }
+    }
+
+    private void addPart(UploadSession session, String spoolFile, long size) throws IOException {
+        // Reserve the whole file up front; chunks are then written in place
+        try (RandomAccessFile file = new RandomAccessFile(Paths.get(session.getSpoolDir()).resolve(spoolFile).toFile(), "rw")) {
+            file.setLength(size);
+        }
+        session.getParts().add(new UploadPart(session, session.getParts().size(), spoolFile, size));
+    }
+
+    private static IngestJob.Type parseType(String type) {
+        if ("song".equalsIgnoreCase(type)) {
+            return IngestJob.Type.SONG;
+        }
+        if ("album".equalsIgnoreCase(type)) {
+            return IngestJob.Type.ALBUM;
+        }
+        throw new IllegalArgumentException("type must be \"song\" or \"album\"");
+    }
+
+    private void validate(UploadRequest request, IngestJob.Type type) {
+        if (isBlank(request.getTitle()) || isBlank(request.getArtist())) {
+            throw new IllegalArgumentException("title and artist are required");
+        }
+        checkSize("coverArtSize", request.getCoverArtSize());
+        if (request.getTracks() == null || request.getTracks().isEmpty()) {
+            throw new IllegalArgumentException("At least one track is required");
+        }
+        if (type == IngestJob.Type.SONG && request.getTracks().size() != 1) {
+            throw new IllegalArgumentException("A song upload has exactly one track");
+        }
+        for (UploadRequest.Track track : request.getTracks()) {
+            if (isBlank(track.getTitle()) || isBlank(track.getProducer())) {
+                throw new IllegalArgumentException("Every track needs a title and a producer");
+            }
+            checkSize("size of track \"" + track.getTitle() + "\"", track.getSize());
+        }
+    }
+
+    private void checkSize(String name, Long size) {
+        if (size == null || size <= 0 || size > maxFileBytes) {
+            throw new IllegalArgumentException(name + " must be between 1 and " + maxFileBytes + " bytes");
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static void deleteSpool(Path dir) {
+        try {
+            FileSystemUtils.deleteRecursively(dir);
+        } catch (IOException e) {
+            System.err.println("Could not delete spool directory " + dir + ": " + e.getMessage());
+        }
+    }
+}
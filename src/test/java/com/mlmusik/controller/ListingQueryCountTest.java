@@ -0,0 +1,155 @@
+package com.mlmusik.controller;
+
+import com.mlmusik.model.Album;
+import com.mlmusik.model.Song;
+import com.mlmusik.repository.AlbumRepository;
+import com.mlmusik.repository.SongRepository;
+import com.mlmusik.service.TrendingService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The catalog read endpoints issue a fixed number of statements however many albums and
+ * songs there are (no query per album or per song).
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:listings;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "file.upload.dir=target/test-uploads",
+        "file.upload.cover-art-dir=target/test-uploads/cover-art",
+        "file.upload.songs-dir=target/test-uploads/songs",
+        "file.upload.seek-dir=target/test-uploads/seek",
+        "file.upload.hls-dir=target/test-uploads/hls",
+        "file.upload.state-dir=target/test-uploads/state",
+        "file.import-dir=target/test-uploads/import",
+        "journal.dir=target/test-uploads/journal",
+        "ingest.jobs.spool-dir=target/test-uploads/spool",
+        "streaming.cache.enabled=false"
+})
+@AutoConfigureMockMvc
+public class ListingQueryCountTest {
+
+    private static final int ALBUMS = 5;
+    private static final int SONGS_PER_ALBUM = 4;
+    private static final int SINGLES = 3;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AlbumRepository albumRepository;
+
+    @Autowired
+    private SongRepository songRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private TrendingService trendingService;
+
+    private Statistics statistics;
+    private final List<Long> albumIds = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        songRepository.deleteAll();
+        albumRepository.deleteAll();
+        albumIds.clear();
+        for (int a = 0; a < ALBUMS; a++) {
+            Album album = new Album("Album " + a, "Artist", "cover-" + a + ".jpg");
+            for (int t = 1; t <= SONGS_PER_ALBUM; t++) {
+                Song song = new Song("Track " + t, "Artist", null, "Producer", t, "song-" + a + "-" + t + ".mp3",
+                        album.getCoverArtPath());
+                song.setAlbum(album);
+                album.getSongs().add(song);
+            }
+            albumIds.add(albumRepository.save(album).getId());
+        }
+        for (int s = 0; s < SINGLES; s++) {
+            songRepository.save(new Song("Single " + s, "Artist", null, "Producer", null, "single-" + s + ".mp3",
+                    "cover.jpg"));
+        }
+
+        List<TrendingService.Entry> ranking = new ArrayList<>();
+        for (Long id : albumIds) {
+            TrendingService.Entry entry = mock(TrendingService.Entry.class);
+            when(entry.getId()).thenReturn(id);
+            when(entry.getPlays()).thenReturn(10L);
+            ranking.add(entry);
+        }
+        when(trendingService.getTopAlbums(any(), anyInt())).thenReturn(ranking);
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void listAlbumsRunsOneStatement() throws Exception {
+        mockMvc.perform(get("/albums"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.albums.length()").value(ALBUMS))
+                .andExpect(jsonPath("$.nextCursor").isEmpty());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void getAlbumRunsOneStatement() throws Exception {
+        mockMvc.perform(get("/albums/{id}", albumIds.get(0)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.songs.length()").value(SONGS_PER_ALBUM));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void listSongsDefaultsToFirstPage() throws Exception {
+        mockMvc.perform(get("/songs"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.songs.length()").value(ALBUMS * SONGS_PER_ALBUM + SINGLES))
+                .andExpect(jsonPath("$.nextCursor").isEmpty());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void songsPageRunsOneStatement() throws Exception {
+        mockMvc.perform(get("/songs").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.songs.length()").value(10));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void trendingAlbumsRunTwoStatements() throws Exception {
+        mockMvc.perform(get("/albums/trending"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.albums.length()").value(ALBUMS))
+                .andExpect(jsonPath("$.albums[0].album.songs.length()").value(SONGS_PER_ALBUM));
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+}